@@ -0,0 +1,43 @@
+package com.bourke.travelbar.benchmark;
+
+import com.bourke.travelbar.PlaceDetails;
+import com.bourke.travelbar.PlacesJsonDecoder;
+import com.bourke.travelbar.Prediction;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding of Places API responses as done by PlaceProvider.query().
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class DecodeBenchmark {
+
+    private byte[] mAutocomplete;
+    private byte[] mDetails;
+
+    @Setup public void setUp() throws IOException {
+        mAutocomplete = Fixtures.load("autocomplete.json");
+        mDetails = Fixtures.load("details.json");
+    }
+
+    @Benchmark public List<Prediction> decodePredictions() throws IOException {
+        return PlacesJsonDecoder.PREDICTIONS.parse(new ByteArrayInputStream(mAutocomplete));
+    }
+
+    @Benchmark public PlaceDetails decodeDetails() throws IOException {
+        return PlacesJsonDecoder.DETAILS.parse(new ByteArrayInputStream(mDetails));
+    }
+}
@@ -0,0 +1,43 @@
+package com.bourke.travelbar.benchmark;
+
+import com.bourke.travelbar.GeoMath;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Distance from each fix of a trip to the destination, as done on every location update.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DistanceBenchmark {
+
+    private Fixtures.Trace mTrace;
+    private double mDestinationLat;
+    private double mDestinationLon;
+
+    private int mFix = 0;
+
+    @Setup public void setUp() throws IOException {
+        mTrace = Fixtures.loadTrace("trace.csv");
+        mDestinationLat = mTrace.lat[mTrace.size() - 1];
+        mDestinationLon = mTrace.lon[mTrace.size() - 1];
+    }
+
+    @Benchmark public double distanceToDestination() {
+        int fix = mFix;
+        mFix = fix + 1 == mTrace.size() ? 0 : fix + 1;
+
+        return GeoMath.distanceBetween(mTrace.lat[fix], mTrace.lon[fix], mDestinationLat,
+                mDestinationLon);
+    }
+}
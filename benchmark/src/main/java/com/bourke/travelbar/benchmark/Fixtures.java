@@ -0,0 +1,91 @@
+package com.bourke.travelbar.benchmark;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Loads the fixture payloads and GPS traces under src/main/resources/fixtures.
+ */
+final class Fixtures {
+
+    private Fixtures() {
+        // No instances.
+    }
+
+    static byte[] load(String name) throws IOException {
+        InputStream in = open(name);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Reads a trace of comma separated time, lat, lon, accuracy and speed lines.
+     */
+    static Trace loadTrace(String name) throws IOException {
+        List<String[]> rows = new ArrayList<String[]>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(open(name), "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.length() > 0 && !line.startsWith("#")) {
+                    rows.add(line.split(","));
+                }
+            }
+        } finally {
+            reader.close();
+        }
+
+        Trace trace = new Trace(rows.size());
+        for (int i=0; i < rows.size(); i++) {
+            String[] row = rows.get(i);
+            trace.time[i] = Long.parseLong(row[0]);
+            trace.lat[i] = Double.parseDouble(row[1]);
+            trace.lon[i] = Double.parseDouble(row[2]);
+            trace.accuracy[i] = Float.parseFloat(row[3]);
+            trace.speed[i] = Float.parseFloat(row[4]);
+        }
+        return trace;
+    }
+
+    private static InputStream open(String name) throws IOException {
+        InputStream in = Fixtures.class.getResourceAsStream("/fixtures/" + name);
+        if (in == null) {
+            throw new IOException("No fixture " + name);
+        }
+        return in;
+    }
+
+    static final class Trace {
+        final long[] time;
+        final double[] lat;
+        final double[] lon;
+        final float[] accuracy;
+        final float[] speed;
+
+        Trace(int size) {
+            time = new long[size];
+            lat = new double[size];
+            lon = new double[size];
+            accuracy = new float[size];
+            speed = new float[size];
+        }
+
+        int size() {
+            return time.length;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.bourke.travelbar.benchmark;
+
+import com.bourke.travelbar.GeoMath;
+import com.bourke.travelbar.ProgressMath;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The progress and colour math run by ProgressBarService.updateProgress() for each fix.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ProgressBenchmark {
+
+    private Fixtures.Trace mTrace;
+    private double mTotalDistance;
+    private double[] mDistanceRemaining;
+
+    private int mFix = 0;
+
+    @Setup public void setUp() throws IOException {
+        mTrace = Fixtures.loadTrace("trace.csv");
+
+        int last = mTrace.size() - 1;
+        mTotalDistance = GeoMath.distanceBetween(mTrace.lat[0], mTrace.lon[0], mTrace.lat[last],
+                mTrace.lon[last]);
+
+        // Distances are measured by DistanceBenchmark, keep them out of this one
+        mDistanceRemaining = new double[mTrace.size()];
+        for (int i=0; i < mTrace.size(); i++) {
+            mDistanceRemaining[i] = GeoMath.distanceBetween(mTrace.lat[i], mTrace.lon[i],
+                    mTrace.lat[last], mTrace.lon[last]);
+        }
+    }
+
+    @Benchmark public int progressAndColour() {
+        int fix = mFix;
+        mFix = fix + 1 == mTrace.size() ? 0 : fix + 1;
+
+        int progress = ProgressMath.progress(mDistanceRemaining[fix], mTotalDistance);
+        return ProgressMath.colour(progress) ^ progress;
+    }
+}
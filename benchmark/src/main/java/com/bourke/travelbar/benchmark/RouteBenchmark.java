@@ -0,0 +1,59 @@
+package com.bourke.travelbar.benchmark;
+
+import com.bourke.travelbar.RoutePolyline;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Matching each fix of a trip to a route of increasing length. Most fixes only search the
+ * segments around the last match, but each wrap back to the start of the trace, and each run
+ * of noisy fixes, costs a scan of the whole route, which is included in the average.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RouteBenchmark {
+
+    @Param({"1000", "10000", "50000"})
+    public int mRoutePoints;
+
+    private Fixtures.Trace mTrace;
+    private RoutePolyline mRoute;
+
+    private int mFix = 0;
+
+    @Setup public void setUp() throws IOException {
+        mTrace = Fixtures.loadTrace("trace.csv");
+
+        // Follow the trace, with extra points evenly spaced along each leg
+        double[] lats = new double[mRoutePoints];
+        double[] lons = new double[mRoutePoints];
+        int legs = mTrace.size() - 1;
+        for (int i=0; i < mRoutePoints; i++) {
+            double position = (double) i * legs / (mRoutePoints - 1);
+            int leg = Math.min((int) position, legs - 1);
+            double fraction = position - leg;
+            lats[i] = mTrace.lat[leg] + fraction * (mTrace.lat[leg + 1] - mTrace.lat[leg]);
+            lons[i] = mTrace.lon[leg] + fraction * (mTrace.lon[leg + 1] - mTrace.lon[leg]);
+        }
+        mRoute = new RoutePolyline(lats, lons);
+    }
+
+    @Benchmark public double project() {
+        int fix = mFix;
+        mFix = fix + 1 == mTrace.size() ? 0 : fix + 1;
+
+        mRoute.project(mTrace.lat[fix], mTrace.lon[fix]);
+        return mRoute.getDistanceRemaining();
+    }
+}
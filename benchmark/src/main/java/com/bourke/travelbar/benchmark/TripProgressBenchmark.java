@@ -0,0 +1,46 @@
+package com.bourke.travelbar.benchmark;
+
+import com.bourke.travelbar.TripProgressEngine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A whole fix through TripProgressEngine, as fed by ProgressBarService. The gc profiler should
+ * report no allocation per operation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TripProgressBenchmark {
+
+    private Fixtures.Trace mTrace;
+    private TripProgressEngine mEngine;
+
+    private int mFix = 0;
+
+    @Setup public void setUp() throws IOException {
+        mTrace = Fixtures.loadTrace("trace.csv");
+
+        int last = mTrace.size() - 1;
+        mEngine = new TripProgressEngine();
+        mEngine.setStart(mTrace.lat[0], mTrace.lon[0]);
+        mEngine.setDestination(mTrace.lat[last], mTrace.lon[last]);
+    }
+
+    @Benchmark public float update() {
+        int fix = mFix;
+        mFix = fix + 1 == mTrace.size() ? 0 : fix + 1;
+
+        mEngine.update(mTrace.lat[fix], mTrace.lon[fix], mTrace.time[fix]);
+        return mEngine.getExactProgress() + mEngine.getProgress();
+    }
+}
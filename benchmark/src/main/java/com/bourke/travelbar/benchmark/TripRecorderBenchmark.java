@@ -0,0 +1,58 @@
+package com.bourke.travelbar.benchmark;
+
+import com.bourke.travelbar.TripRecorder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Recording a fix and its progress, as ProgressBarService does for each kept fix. The cost of
+ * writing each full buffer out, and of rotating the log, is included in the average.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TripRecorderBenchmark {
+
+    private Fixtures.Trace mTrace;
+    private File mDir;
+    private TripRecorder mRecorder;
+
+    private int mFix = 0;
+
+    @Setup public void setUp() throws IOException {
+        mTrace = Fixtures.loadTrace("trace.csv");
+
+        mDir = File.createTempFile("trip", "");
+        if (!mDir.delete() || !mDir.mkdir()) {
+            throw new IOException("Couldn't make " + mDir);
+        }
+        mRecorder = new TripRecorder(mDir);
+    }
+
+    @TearDown public void tearDown() throws IOException {
+        mRecorder.close();
+        new File(mDir, TripRecorder.LOG_NAME).delete();
+        new File(mDir, TripRecorder.OLD_LOG_NAME).delete();
+        mDir.delete();
+    }
+
+    @Benchmark public void record() throws IOException {
+        int fix = mFix;
+        mFix = fix + 1 == mTrace.size() ? 0 : fix + 1;
+
+        long time = mTrace.time[fix];
+        mRecorder.recordFix(time, mTrace.lat[fix], mTrace.lon[fix], 10, 12.5f);
+        mRecorder.recordProgress(time, 42, 42.5, 1000, 12.5f);
+    }
+}
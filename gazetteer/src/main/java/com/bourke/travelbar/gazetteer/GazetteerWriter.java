@@ -0,0 +1,136 @@
+package com.bourke.travelbar.gazetteer;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Writes the offline gazetteer read by the app's Gazetteer class from a tab separated list of
+ * places, one per line as name, latitude and longitude. Blank lines and lines starting with #
+ * are skipped.
+ *
+ * Run with: gradle :gazetteer:generate
+ */
+public class GazetteerWriter {
+
+    private static final int MAGIC = 0x5442475A;
+    private static final int VERSION = 1;
+
+    private static class Place {
+        final byte[] key;
+        final byte[] name;
+        final int latE6;
+        final int lngE6;
+
+        Place(String name, double lat, double lng) throws IOException {
+            this.key = normalise(name).getBytes("UTF-8");
+            this.name = name.getBytes("UTF-8");
+            this.latE6 = (int) Math.round(lat * 1e6);
+            this.lngE6 = (int) Math.round(lng * 1e6);
+        }
+    }
+
+    /** Keys compared as unsigned bytes, the order Gazetteer's binary search expects */
+    private static final Comparator<Place> KEY_ORDER = new Comparator<Place>() {
+        @Override public int compare(Place a, Place b) {
+            int n = Math.min(a.key.length, b.key.length);
+            for (int i=0; i < n; i++) {
+                int diff = (a.key[i] & 0xFF) - (b.key[i] & 0xFF);
+                if (diff != 0) {
+                    return diff;
+                }
+            }
+            return a.key.length - b.key.length;
+        }
+    };
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: GazetteerWriter <places.tsv> <gazetteer.bin>");
+            System.exit(1);
+        }
+
+        List<Place> places = read(args[0]);
+        Collections.sort(places, KEY_ORDER);
+        write(places, args[1]);
+
+        System.out.println("Wrote " + places.size() + " places to " + args[1]);
+    }
+
+    /**
+     * Must match PredictionCache.normalise in the app, which queries are normalised with.
+     */
+    static String normalise(String query) {
+        return query.trim().replaceAll("\\s+", " ").toLowerCase(Locale.US);
+    }
+
+    private static List<Place> read(String path) throws IOException {
+        List<Place> places = new ArrayList<Place>();
+        BufferedReader in = new BufferedReader(
+                new InputStreamReader(new FileInputStream(path), "UTF-8"));
+        try {
+            String line;
+            int lineNumber = 0;
+            while ((line = in.readLine()) != null) {
+                lineNumber++;
+                if (line.trim().isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+
+                String[] fields = line.split("\t");
+                if (fields.length != 3) {
+                    throw new IOException(path + ":" + lineNumber + ": expected 3 fields");
+                }
+                try {
+                    places.add(new Place(fields[0].trim(), Double.parseDouble(fields[1]),
+                            Double.parseDouble(fields[2])));
+                } catch (NumberFormatException e) {
+                    throw new IOException(path + ":" + lineNumber + ": " + e.getMessage());
+                }
+            }
+        } finally {
+            in.close();
+        }
+        return places;
+    }
+
+    private static void write(List<Place> places, String path) throws IOException {
+        ByteArrayOutputStream strings = new ByteArrayOutputStream();
+
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(path)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(places.size());
+
+            for (Place place : places) {
+                if (place.key.length > 0xFFFF || place.name.length > 0xFFFF) {
+                    throw new IOException("Name too long: " + new String(place.name, "UTF-8"));
+                }
+                out.writeInt(strings.size());
+                strings.write(place.key);
+                out.writeInt(strings.size());
+                strings.write(place.name);
+                out.writeInt(place.latE6);
+                out.writeInt(place.lngE6);
+                out.writeShort(place.key.length);
+                out.writeShort(place.name.length);
+            }
+
+            strings.writeTo(out);
+        } finally {
+            out.close();
+        }
+    }
+}
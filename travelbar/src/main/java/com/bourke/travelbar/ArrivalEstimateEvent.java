@@ -0,0 +1,24 @@
+package com.bourke.travelbar;
+
+public class ArrivalEstimateEvent {
+
+    // Milliseconds until arrival, or -1 if unknown
+    public final long timeRemaining;
+
+    // Expected arrival as a wall clock time in milliseconds, or -1 if unknown
+    public final long arrivalTime;
+
+    public ArrivalEstimateEvent(long timeRemaining, long arrivalTime) {
+        this.timeRemaining = timeRemaining;
+        this.arrivalTime = arrivalTime;
+    }
+
+    @Override public String toString() {
+        return new StringBuilder("(") //
+                .append(timeRemaining) //
+                .append(", ") //
+                .append(arrivalTime) //
+                .append(")") //
+                .toString();
+    }
+}
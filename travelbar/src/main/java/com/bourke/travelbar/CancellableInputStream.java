@@ -0,0 +1,37 @@
+package com.bourke.travelbar;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Checks a {@link QueryCancellation} before every read, so a parser consuming the stream stops
+ * with a {@link QueryCanceledException} as soon as its result is no longer wanted.
+ */
+public class CancellableInputStream extends FilterInputStream {
+
+    private final QueryCancellation mSignal;
+
+    public CancellableInputStream(InputStream in, QueryCancellation signal) {
+        super(in);
+        mSignal = signal;
+    }
+
+    @Override
+    public int read() throws IOException {
+        mSignal.throwIfCanceled();
+        return super.read();
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int count) throws IOException {
+        mSignal.throwIfCanceled();
+        return super.read(buffer, offset, count);
+    }
+
+    @Override
+    public long skip(long byteCount) throws IOException {
+        mSignal.throwIfCanceled();
+        return super.skip(byteCount);
+    }
+}
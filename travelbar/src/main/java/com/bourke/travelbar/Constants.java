@@ -7,4 +7,28 @@ public class Constants {
 
     // A fast frequency ceiling in milliseconds
     public static final long FASTEST_INTERVAL = 1000;
+
+    // Longest we'll go between GPS updates, far from the destination, in milliseconds
+    public static final long MAX_UPDATE_INTERVAL = 48000;
+
+    // Distance from the destination in metres at which we go back to frequent, accurate updates
+    public static final double APPROACH_DISTANCE = 2000;
+
+    // Fixes less accurate than this, in metres, are ignored
+    public static final float MAX_FIX_ACCURACY = 50;
+
+    // Distance from the destination in metres at which we've arrived
+    public static final float ARRIVAL_RADIUS = 500;
+
+    // Smallest arrival radius in metres, however short the trip
+    public static final float MIN_ARRIVAL_RADIUS = 100;
+
+    // How long an arrival geofence lives if we never get to remove it, in milliseconds
+    public static final long GEOFENCE_EXPIRATION = 12 * 60 * 60 * 1000;
+
+    // Fixes held while the screen is off before they're worked through together
+    public static final int SCREEN_OFF_BATCH_SIZE = 32;
+
+    // Minimum time between updates of the running notification in milliseconds
+    public static final long NOTIFICATION_MIN_INTERVAL = 5000;
 }
@@ -0,0 +1,79 @@
+package com.bourke.travelbar;
+
+/**
+ * A fixed size ring of location fixes held in primitive arrays, for holding on to fixes while
+ * nobody's looking and working through them later. When full the oldest fix is overwritten.
+ * Nothing is allocated after construction. Not thread safe.
+ */
+public class FixBuffer {
+
+    private final double[] mLats;
+    private final double[] mLons;
+    private final float[] mAccuracies;
+    private final long[] mTimes;
+
+    // Index of the oldest fix, and how many there are
+    private int mStart = 0;
+    private int mSize = 0;
+
+    public FixBuffer(int capacity) {
+        mLats = new double[capacity];
+        mLons = new double[capacity];
+        mAccuracies = new float[capacity];
+        mTimes = new long[capacity];
+    }
+
+    public void add(double lat, double lon, float accuracy, long time) {
+        int capacity = mTimes.length;
+        int i = (mStart + mSize) % capacity;
+
+        mLats[i] = lat;
+        mLons[i] = lon;
+        mAccuracies[i] = accuracy;
+        mTimes[i] = time;
+
+        if (mSize < capacity) {
+            mSize++;
+        } else {
+            // Overwrote the oldest
+            mStart = (mStart + 1) % capacity;
+        }
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public boolean isFull() {
+        return mSize == mTimes.length;
+    }
+
+    public void clear() {
+        mStart = 0;
+        mSize = 0;
+    }
+
+    /** Latitude of the nth oldest fix */
+    public double getLat(int n) {
+        return mLats[index(n)];
+    }
+
+    public double getLon(int n) {
+        return mLons[index(n)];
+    }
+
+    public float getAccuracy(int n) {
+        return mAccuracies[index(n)];
+    }
+
+    public long getTime(int n) {
+        return mTimes[index(n)];
+    }
+
+    private int index(int n) {
+        if (n < 0 || n >= mSize) {
+            throw new IndexOutOfBoundsException("Fix " + n + " of " + mSize);
+        }
+        return (mStart + n) % mTimes.length;
+    }
+}
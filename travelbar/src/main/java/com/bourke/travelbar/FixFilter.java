@@ -0,0 +1,118 @@
+package com.bourke.travelbar;
+
+/**
+ * Cleans up location fixes before they reach {@link TripProgressEngine}.
+ *
+ * Fixes less accurate than {@link #setMaxAccuracy(float)} are dropped, and the rest are run
+ * through an alpha-beta filter, which tracks position and velocity and blends each fix with
+ * where we expected to be. GPS jitter while stood still mostly cancels out, while real movement
+ * comes through with a short lag. Plain Java, nothing allocated per fix.
+ */
+public class FixFilter {
+
+    // How much of each fix's surprise goes into the position and velocity
+    public static final double DEFAULT_ALPHA = 0.5;
+    public static final double DEFAULT_BETA = 0.1;
+
+    // Gap between fixes in milliseconds after which we start afresh
+    private static final long MAX_GAP = 60000;
+
+    private final double mAlpha;
+    private final double mBeta;
+
+    private float mMaxAccuracy;
+
+    private boolean mHasFix = false;
+    private long mTime;
+    private double mLat;
+    private double mLon;
+
+    // Degrees per second
+    private double mLatVelocity;
+    private double mLonVelocity;
+
+    public FixFilter(float maxAccuracy) {
+        this(maxAccuracy, DEFAULT_ALPHA, DEFAULT_BETA);
+    }
+
+    /**
+     * @param alpha weight of a fix against the predicted position, 0 to 1
+     * @param beta weight of a fix's surprise on the velocity, 0 to alpha
+     */
+    public FixFilter(float maxAccuracy, double alpha, double beta) {
+        mMaxAccuracy = maxAccuracy;
+        mAlpha = alpha;
+        mBeta = beta;
+    }
+
+    /**
+     * Fixes with a worse accuracy, in metres, than this are dropped.
+     */
+    public void setMaxAccuracy(float maxAccuracy) {
+        mMaxAccuracy = maxAccuracy;
+    }
+
+    /**
+     * Takes a fix, updating {@link #getLat()} and {@link #getLon()} if it's accepted.
+     *
+     * @param accuracy of the fix in metres, or 0 if unknown
+     * @param time of the fix in milliseconds
+     * @return false if the fix was dropped
+     */
+    public boolean accept(double lat, double lon, float accuracy, long time) {
+        if (accuracy > mMaxAccuracy) {
+            return false;
+        }
+
+        long gap = time - mTime;
+        if (!mHasFix || gap > MAX_GAP) {
+            reset(lat, lon, time);
+            return true;
+        }
+        if (gap <= 0) {
+            // Out of order or repeated
+            return false;
+        }
+
+        double seconds = gap / 1000.0;
+
+        // Predict where we should be by now, then correct towards the fix
+        double lat0 = mLat + mLatVelocity * seconds;
+        double lon0 = mLon + mLonVelocity * seconds;
+        double latResidual = lat - lat0;
+        double lonResidual = lon - lon0;
+
+        mLat = lat0 + mAlpha * latResidual;
+        mLon = lon0 + mAlpha * lonResidual;
+        mLatVelocity += mBeta * latResidual / seconds;
+        mLonVelocity += mBeta * lonResidual / seconds;
+        mTime = time;
+        return true;
+    }
+
+    public void reset() {
+        mHasFix = false;
+    }
+
+    public double getLat() {
+        return mLat;
+    }
+
+    public double getLon() {
+        return mLon;
+    }
+
+    /** Time of the last accepted fix in milliseconds */
+    public long getTime() {
+        return mTime;
+    }
+
+    private void reset(double lat, double lon, long time) {
+        mLat = lat;
+        mLon = lon;
+        mLatVelocity = 0;
+        mLonVelocity = 0;
+        mTime = time;
+        mHasFix = true;
+    }
+}
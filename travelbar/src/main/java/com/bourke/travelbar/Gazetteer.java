@@ -0,0 +1,214 @@
+package com.bourke.travelbar;
+
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Offline place search over a binary gazetteer shipped as an uncompressed asset.
+ *
+ * The file is memory-mapped straight out of the APK, so opening it costs nothing and only the
+ * pages a lookup touches are ever read. All values are big-endian:
+ *
+ * <pre>
+ * header   int magic "TBGZ", int version, int count
+ * records  count x { int keyOffset, int nameOffset, int latE6, int lngE6,
+ *                    short keyLength, short nameLength }
+ * strings  UTF-8 bytes, offsets are relative to the start of this section
+ * </pre>
+ *
+ * Records are sorted by key, the place name normalised like {@link PredictionCache#normalise},
+ * compared as unsigned bytes. A prefix search is a binary search over the records.
+ */
+public class Gazetteer {
+
+    private static final int MAGIC = 0x5442475A;
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 12;
+    private static final int RECORD_SIZE = 20;
+
+    private static final String REFERENCE_PREFIX = "gazetteer:";
+
+    private final ByteBuffer mBuffer;
+    private final int mCount;
+    private final int mStringsStart;
+
+    private Gazetteer(ByteBuffer buffer) throws IOException {
+        mBuffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a gazetteer file");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported gazetteer version " + buffer.getInt(4));
+        }
+        mCount = buffer.getInt(8);
+        mStringsStart = HEADER_SIZE + mCount * RECORD_SIZE;
+        if (mCount < 0 || mStringsStart > buffer.capacity()) {
+            throw new IOException("Truncated gazetteer file");
+        }
+    }
+
+    /**
+     * Maps a gazetteer asset. The asset must be stored uncompressed in the APK.
+     *
+     * @throws java.io.FileNotFoundException if there is no such asset
+     */
+    public static Gazetteer open(AssetManager assets, String name) throws IOException {
+        AssetFileDescriptor afd = assets.openFd(name);
+        FileInputStream in = afd.createInputStream();
+        try {
+            MappedByteBuffer buffer = in.getChannel().map(FileChannel.MapMode.READ_ONLY,
+                    afd.getStartOffset(), afd.getLength());
+            return new Gazetteer(buffer);
+        } finally {
+            // The mapping stays valid once the file is closed
+            in.close();
+        }
+    }
+
+    public int size() {
+        return mCount;
+    }
+
+    /**
+     * Returns the indexes of up to limit places whose name starts with the query.
+     */
+    public int[] search(String query, int limit) {
+        byte[] prefix = toBytes(PredictionCache.normalise(query));
+        if (prefix.length == 0) {
+            return new int[0];
+        }
+
+        int first = lowerBound(prefix);
+        int n = 0;
+        while (first + n < mCount && n < limit && startsWith(first + n, prefix)) {
+            n++;
+        }
+
+        int[] matches = new int[n];
+        for (int i=0; i < n; i++) {
+            matches[i] = first + i;
+        }
+        return matches;
+    }
+
+    public String getName(int index) {
+        int record = recordOffset(index);
+        return readString(mBuffer.getInt(record + 4), mBuffer.getShort(record + 18) & 0xFFFF);
+    }
+
+    public double getLat(int index) {
+        return mBuffer.getInt(recordOffset(index) + 8) / 1e6;
+    }
+
+    public double getLng(int index) {
+        return mBuffer.getInt(recordOffset(index) + 12) / 1e6;
+    }
+
+    /** A reference that can be given out in place of a Places API reference */
+    public static String getReference(int index) {
+        return REFERENCE_PREFIX + index;
+    }
+
+    /**
+     * Returns the index a reference from {@link #getReference(int)} points to, or -1 if it isn't
+     * one of ours.
+     */
+    public int indexOf(String reference) {
+        if (reference == null || !reference.startsWith(REFERENCE_PREFIX)) {
+            return -1;
+        }
+        try {
+            int index = Integer.parseInt(reference.substring(REFERENCE_PREFIX.length()));
+            return index >= 0 && index < mCount ? index : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    public static boolean isReference(String reference) {
+        return reference != null && reference.startsWith(REFERENCE_PREFIX);
+    }
+
+    private int recordOffset(int index) {
+        if (index < 0 || index >= mCount) {
+            throw new IndexOutOfBoundsException("No place " + index);
+        }
+        return HEADER_SIZE + index * RECORD_SIZE;
+    }
+
+    /** Index of the first record whose key is not less than prefix */
+    private int lowerBound(byte[] prefix) {
+        int low = 0;
+        int high = mCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compareKey(mid, prefix) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private int compareKey(int index, byte[] other) {
+        int record = recordOffset(index);
+        int offset = mStringsStart + mBuffer.getInt(record);
+        int length = mBuffer.getShort(record + 16) & 0xFFFF;
+
+        int n = Math.min(length, other.length);
+        for (int i=0; i < n; i++) {
+            int a = mBuffer.get(offset + i) & 0xFF;
+            int b = other[i] & 0xFF;
+            if (a != b) {
+                return a - b;
+            }
+        }
+        return length - other.length;
+    }
+
+    private boolean startsWith(int index, byte[] prefix) {
+        int record = recordOffset(index);
+        int offset = mStringsStart + mBuffer.getInt(record);
+        int length = mBuffer.getShort(record + 16) & 0xFFFF;
+
+        if (length < prefix.length) {
+            return false;
+        }
+        for (int i=0; i < prefix.length; i++) {
+            if (mBuffer.get(offset + i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String readString(int offset, int length) {
+        byte[] bytes = new byte[length];
+        int start = mStringsStart + offset;
+        for (int i=0; i < length; i++) {
+            bytes[i] = mBuffer.get(start + i);
+        }
+        try {
+            return new String(bytes, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static byte[] toBytes(String s) {
+        try {
+            return s.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.bourke.travelbar;
+
+/**
+ * Distance calculations on plain lat/lon doubles, free of Android types and allocation.
+ */
+public final class GeoMath {
+
+    // Mean radius of the earth in metres
+    public static final double EARTH_RADIUS = 6371008.8;
+
+    private GeoMath() {
+        // No instances.
+    }
+
+    /**
+     * Great-circle distance in metres between two points given in degrees, using the haversine
+     * formula. Within half a percent of the WGS84 distance from
+     * {@link android.location.Location#distanceTo}, which is plenty for a progress ratio.
+     */
+    public static double distanceBetween(double lat1, double lon1, double lat2, double lon2) {
+        double phi1 = Math.toRadians(lat1);
+        double phi2 = Math.toRadians(lat2);
+        double sinDLat = Math.sin((phi2 - phi1) / 2);
+        double sinDLon = Math.sin(Math.toRadians(lon2 - lon1) / 2);
+
+        double a = sinDLat * sinDLat + Math.cos(phi1) * Math.cos(phi2) * sinDLon * sinDLon;
+        return 2 * EARTH_RADIUS * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+}
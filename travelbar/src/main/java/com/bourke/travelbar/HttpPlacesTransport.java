@@ -0,0 +1,163 @@
+package com.bourke.travelbar;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Talks to the Places API over {@link HttpURLConnection}.
+ *
+ * Connections are never disconnected, instead each response is read to the end and closed so the
+ * socket goes back to the platform's keep-alive pool for the next request. Responses are
+ * requested gzipped, and requests that fail to connect, or get a server error, before their
+ * body is parsed are retried with exponential backoff. Other HTTP errors, such as a bad key or
+ * being over the query limit, would only fail again and use up quota, so aren't retried.
+ */
+public class HttpPlacesTransport implements PlacesTransport {
+
+    private static final String TAG = "TravelBar/HttpPlacesTransport";
+
+    private final int mConnectTimeout;
+    private final int mReadTimeout;
+    private final int mMaxRetries;
+    private final long mRetryBackoff;
+
+    /**
+     * @param connectTimeout in milliseconds
+     * @param readTimeout in milliseconds
+     * @param maxRetries how many times a failed request is repeated
+     * @param retryBackoff delay before the first retry in milliseconds, doubled for each one after
+     */
+    public HttpPlacesTransport(int connectTimeout, int readTimeout, int maxRetries,
+                               long retryBackoff) {
+        mConnectTimeout = connectTimeout;
+        mReadTimeout = readTimeout;
+        mMaxRetries = maxRetries;
+        mRetryBackoff = retryBackoff;
+    }
+
+    @Override
+    public <T> T get(String url, ResponseParser<T> parser, QueryCancellation signal,
+                     PlaceMetrics metrics) throws IOException {
+        int attempt = 0;
+        while (true) {
+            if (signal != null) {
+                signal.throwIfCanceled();
+            }
+
+            HttpURLConnection connection;
+            InputStream in;
+            int status;
+            long start = System.nanoTime();
+            try {
+                connection = open(url);
+
+                status = connection.getResponseCode();
+                in = status == HttpURLConnection.HTTP_OK
+                        ? connection.getInputStream() : connection.getErrorStream();
+            } catch (IOException e) {
+                if (attempt >= mMaxRetries) {
+                    throw e;
+                }
+                backoff(attempt++, e);
+                continue;
+            }
+
+            if (status != HttpURLConnection.HTTP_OK) {
+                discard(in);
+                IOException e = new IOException("Unexpected HTTP status " + status);
+                if (status < HttpURLConnection.HTTP_INTERNAL_ERROR || attempt >= mMaxRetries) {
+                    throw e;
+                }
+                backoff(attempt++, e);
+                continue;
+            }
+
+            long connected = System.nanoTime();
+            TimedInputStream timed = new TimedInputStream(in);
+            in = timed;
+
+            // Once parsing starts the request isn't repeated, the failure is passed on instead
+            try {
+                if (signal != null) {
+                    in = new CancellableInputStream(in, signal);
+                }
+                if ("gzip".equalsIgnoreCase(connection.getContentEncoding())) {
+                    in = new GZIPInputStream(in);
+                }
+                T result = parser.parse(in);
+
+                if (metrics != null) {
+                    long readNanos = timed.getReadNanos();
+                    metrics.record(PlaceMetrics.CONNECT, connected - start);
+                    metrics.record(PlaceMetrics.DOWNLOAD, readNanos);
+                    metrics.record(PlaceMetrics.PARSE, System.nanoTime() - connected - readNanos);
+                }
+                return result;
+            } finally {
+                if (signal != null && signal.isCanceled()) {
+                    // Not worth reading the rest of a response nobody wants
+                    closeQuietly(in);
+                } else {
+                    discard(in);
+                }
+            }
+        }
+    }
+
+    private HttpURLConnection open(String url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setConnectTimeout(mConnectTimeout);
+        connection.setReadTimeout(mReadTimeout);
+        connection.setRequestProperty("Accept-Encoding", "gzip");
+        return connection;
+    }
+
+    private void backoff(int attempt, IOException cause) throws InterruptedIOException {
+        long delay = mRetryBackoff << attempt;
+
+        if (BuildConfig.DEBUG) {
+            Log.d(TAG, "Retrying in " + delay + "ms after: " + cause.getMessage());
+        }
+
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to retry");
+        }
+    }
+
+    /**
+     * Reads what is left of a stream and closes it. A connection is only reused once its
+     * response has been consumed.
+     */
+    private static void discard(InputStream in) {
+        if (in == null) {
+            return;
+        }
+        try {
+            byte[] buffer = new byte[1024];
+            while (in.read(buffer) != -1) {
+                // Skip
+            }
+        } catch (IOException e) {
+            // The connection won't be reused, nothing else to do
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    private static void closeQuietly(InputStream in) {
+        try {
+            in.close();
+        } catch (IOException e) {
+            // Ignore
+        }
+    }
+}
@@ -11,6 +11,8 @@ import android.content.Loader;
 import android.database.Cursor;
 import android.location.Location;
 import android.os.Bundle;
+import android.os.HandlerThread;
+import android.os.Process;
 import android.support.v4.app.FragmentActivity;
 import android.text.Spannable;
 import android.text.SpannableString;
@@ -78,7 +80,10 @@ public class MapsActivity extends FragmentActivity implements
     private MenuItem mSearchMenuItem;
     private SearchView mSearchView;
 
-    private boolean mInitialCenterDone = false;
+    private volatile boolean mInitialCenterDone = false;
+
+    // Fixes are delivered here rather than on the main thread
+    private HandlerThread mLocationThread;
 
     @Override public boolean onMarkerClick(Marker marker) {
         // Reset color for current markers
@@ -150,7 +155,8 @@ public class MapsActivity extends FragmentActivity implements
 
     @Override public void onConnected(Bundle bundle) {
         // TODO: they recommend wrapping a boolean here to disable updates if user requests
-        mLocationClient.requestLocationUpdates(mLocationRequest, this);
+        mLocationClient.requestLocationUpdates(mLocationRequest, this,
+                mLocationThread.getLooper());
     }
 
     @Override public void onDisconnected() {
@@ -187,13 +193,22 @@ public class MapsActivity extends FragmentActivity implements
         }
     }
 
+    /**
+     * Called on the location thread.
+     */
     @Override public void onLocationChanged(Location location) {
         // Center on users location on startup, but don't continue to recenter the camera on every
         // subsequent location update
         if (!mInitialCenterDone) {
-            LatLng latLng = new LatLng(location.getLatitude(), location.getLongitude());
-            mMap.moveCamera(CameraUpdateFactory.newLatLngZoom(latLng, 15));
-            mInitialCenterDone = true;
+            final LatLng latLng = new LatLng(location.getLatitude(), location.getLongitude());
+            runOnUiThread(new Runnable() {
+                @Override public void run() {
+                    if (!mInitialCenterDone) {
+                        mMap.moveCamera(CameraUpdateFactory.newLatLngZoom(latLng, 15));
+                        mInitialCenterDone = true;
+                    }
+                }
+            });
         }
     }
 
@@ -221,6 +236,9 @@ public class MapsActivity extends FragmentActivity implements
         setContentView(R.layout.activity_maps);
         setUpMapIfNeeded();
 
+        mLocationThread = new HandlerThread(TAG, Process.THREAD_PRIORITY_BACKGROUND);
+        mLocationThread.start();
+
         mLocationClient = new LocationClient(this, this, this);
 
         mLocationRequest = LocationRequest.create();
@@ -252,6 +270,12 @@ public class MapsActivity extends FragmentActivity implements
         }
     }
 
+    @Override protected void onDestroy() {
+        mLocationThread.quit();
+
+        super.onDestroy();
+    }
+
     /*
      * Called when the Activity becomes visible.
      */
@@ -440,10 +464,10 @@ public class MapsActivity extends FragmentActivity implements
 
         while (c.moveToNext()) {
             MarkerOptions markerOptions = new MarkerOptions();
-            position = new LatLng(Double.parseDouble(c.getString(1)),
-                    Double.parseDouble(c.getString(2)));
+            position = new LatLng(c.getDouble(PlaceCursor.INDEX_LAT),
+                    c.getDouble(PlaceCursor.INDEX_LNG));
             markerOptions.position(position);
-            markerOptions.title(c.getString(0));
+            markerOptions.title(c.getString(PlaceCursor.INDEX_DESCRIPTION));
             Marker m = mMap.addMarker(markerOptions);
             mMarkers.add(m);
         }
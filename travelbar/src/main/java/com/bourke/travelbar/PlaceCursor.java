@@ -0,0 +1,117 @@
+package com.bourke.travelbar;
+
+import android.database.AbstractCursor;
+import android.database.Cursor;
+
+import java.util.Arrays;
+
+/**
+ * A cursor of places with a description and a lat/lng, the coordinates held as primitive
+ * doubles so they never pass through a String on their way from the Places API to the map.
+ */
+public class PlaceCursor extends AbstractCursor {
+
+    public static final String COLUMN_DESCRIPTION = "description";
+    public static final String COLUMN_LAT = "lat";
+    public static final String COLUMN_LNG = "lng";
+
+    public static final int INDEX_DESCRIPTION = 0;
+    public static final int INDEX_LAT = 1;
+    public static final int INDEX_LNG = 2;
+
+    private static final String[] COLUMNS = new String[] {
+            COLUMN_DESCRIPTION,
+            COLUMN_LAT,
+            COLUMN_LNG
+    };
+
+    private String[] mDescriptions;
+    private double[] mLats;
+    private double[] mLngs;
+    private int mCount = 0;
+
+    public PlaceCursor(int initialCapacity) {
+        mDescriptions = new String[Math.max(initialCapacity, 1)];
+        mLats = new double[mDescriptions.length];
+        mLngs = new double[mDescriptions.length];
+    }
+
+    public void addRow(String description, double lat, double lng) {
+        if (mCount == mDescriptions.length) {
+            int capacity = mCount * 2;
+            mDescriptions = Arrays.copyOf(mDescriptions, capacity);
+            mLats = Arrays.copyOf(mLats, capacity);
+            mLngs = Arrays.copyOf(mLngs, capacity);
+        }
+        mDescriptions[mCount] = description;
+        mLats[mCount] = lat;
+        mLngs[mCount] = lng;
+        mCount++;
+    }
+
+    @Override public int getCount() {
+        return mCount;
+    }
+
+    @Override public String[] getColumnNames() {
+        return COLUMNS;
+    }
+
+    @Override public int getType(int column) {
+        checkColumn(column);
+        return column == INDEX_DESCRIPTION ? Cursor.FIELD_TYPE_STRING : Cursor.FIELD_TYPE_FLOAT;
+    }
+
+    @Override public String getString(int column) {
+        checkPosition();
+        switch (checkColumn(column)) {
+            case INDEX_DESCRIPTION:
+                return mDescriptions[mPos];
+            case INDEX_LAT:
+                return Double.toString(mLats[mPos]);
+            default:
+                return Double.toString(mLngs[mPos]);
+        }
+    }
+
+    @Override public double getDouble(int column) {
+        checkPosition();
+        switch (checkColumn(column)) {
+            case INDEX_LAT:
+                return mLats[mPos];
+            case INDEX_LNG:
+                return mLngs[mPos];
+            default:
+                return Double.parseDouble(mDescriptions[mPos]);
+        }
+    }
+
+    @Override public float getFloat(int column) {
+        return (float) getDouble(column);
+    }
+
+    @Override public long getLong(int column) {
+        return (long) getDouble(column);
+    }
+
+    @Override public int getInt(int column) {
+        return (int) getDouble(column);
+    }
+
+    @Override public short getShort(int column) {
+        return (short) getDouble(column);
+    }
+
+    @Override public boolean isNull(int column) {
+        checkPosition();
+        return checkColumn(column) == INDEX_DESCRIPTION && mDescriptions[mPos] == null;
+    }
+
+    private static int checkColumn(int column) {
+        if (column < 0 || column >= COLUMNS.length) {
+            throw new IndexOutOfBoundsException("Requested column: " + column
+                    + ", # of columns: " + COLUMNS.length);
+        }
+        return column;
+    }
+}
@@ -0,0 +1,27 @@
+package com.bourke.travelbar;
+
+/**
+ * The parts of a Places Details API result that we use.
+ */
+public class PlaceDetails {
+
+    public final String address;
+    public final double lat;
+    public final double lng;
+
+    public PlaceDetails(String address, double lat, double lng) {
+        this.address = address;
+        this.lat = lat;
+        this.lng = lng;
+    }
+
+    @Override public String toString() {
+        return new StringBuilder(address) //
+                .append(" (") //
+                .append(lat) //
+                .append(", ") //
+                .append(lng) //
+                .append(")") //
+                .toString();
+    }
+}
@@ -0,0 +1,169 @@
+package com.bourke.travelbar;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.util.Log;
+
+/**
+ * Persists resolved place details keyed by place reference, so places we have looked up before
+ * don't need another trip to the Places Details API.
+ *
+ * Entries not used within the maximum age are dropped, and once the table holds more than the
+ * maximum number of rows the least recently used ones go first. When an entry was last used is
+ * only kept to within {@link #TOUCH_INTERVAL}, so a lookup doesn't usually write.
+ */
+public class PlaceDetailsStore extends SQLiteOpenHelper {
+
+    private static final String TAG = "TravelBar/PlaceDetailsStore";
+
+    private static final String DATABASE_NAME = "place_details.db";
+    private static final int DATABASE_VERSION = 1;
+
+    private static final String TABLE = "details";
+    private static final String COLUMN_REFERENCE = "reference";
+    private static final String COLUMN_ADDRESS = "address";
+    private static final String COLUMN_LAT = "lat";
+    private static final String COLUMN_LNG = "lng";
+    private static final String COLUMN_LAST_USED = "last_used";
+
+    private static final String[] COLUMNS = new String[] {
+            COLUMN_ADDRESS,
+            COLUMN_LAT,
+            COLUMN_LNG,
+            COLUMN_LAST_USED
+    };
+
+    // How stale an entry's last used time gets before a lookup updates it, in milliseconds
+    private static final long TOUCH_INTERVAL = 24 * 60 * 60 * 1000;
+
+    // Prune at most once per this many inserts
+    private static final int PRUNE_INTERVAL = 20;
+
+    private final long mMaxAge;
+    private final int mMaxRows;
+
+    private int mInsertsSincePrune = PRUNE_INTERVAL;
+
+    /**
+     * @param maxAge how long an unused entry is kept, in milliseconds
+     * @param maxRows the most entries kept
+     */
+    public PlaceDetailsStore(Context context, long maxAge, int maxRows) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        mMaxAge = maxAge;
+        mMaxRows = maxRows;
+    }
+
+    @Override public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE + " ("
+                + COLUMN_REFERENCE + " TEXT PRIMARY KEY, "
+                + COLUMN_ADDRESS + " TEXT NOT NULL, "
+                + COLUMN_LAT + " REAL NOT NULL, "
+                + COLUMN_LNG + " REAL NOT NULL, "
+                + COLUMN_LAST_USED + " INTEGER NOT NULL)");
+        db.execSQL("CREATE INDEX " + TABLE + "_" + COLUMN_LAST_USED + " ON " + TABLE
+                + " (" + COLUMN_LAST_USED + ")");
+    }
+
+    @Override public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // Everything in here can be fetched again
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE);
+        onCreate(db);
+    }
+
+    /**
+     * Returns the stored details for a reference, or null if we don't have them.
+     */
+    public PlaceDetails get(String reference) {
+        Cursor c = null;
+        try {
+            SQLiteDatabase db = getWritableDatabase();
+            c = db.query(TABLE, COLUMNS, COLUMN_REFERENCE + " = ?", new String[] { reference },
+                    null, null, null);
+            if (!c.moveToNext()) {
+                return null;
+            }
+            PlaceDetails details = new PlaceDetails(c.getString(0), c.getDouble(1),
+                    c.getDouble(2));
+
+            // Keep places that are used often from being pruned, without a write per lookup
+            long now = System.currentTimeMillis();
+            if (now - c.getLong(3) >= TOUCH_INTERVAL) {
+                ContentValues values = new ContentValues();
+                values.put(COLUMN_LAST_USED, now);
+                db.update(TABLE, values, COLUMN_REFERENCE + " = ?", new String[] { reference });
+            }
+
+            return details;
+        } catch (SQLException e) {
+            Log.e(TAG, "Failed to read place details: " + e.getMessage());
+            return null;
+        } finally {
+            if (c != null) {
+                c.close();
+            }
+        }
+    }
+
+    /**
+     * Returns whether details are stored for a reference, without counting as a use of them.
+     */
+    public boolean contains(String reference) {
+        try {
+            return DatabaseUtils.queryNumEntries(getReadableDatabase(), TABLE,
+                    COLUMN_REFERENCE + " = ?", new String[] { reference }) > 0;
+        } catch (SQLException e) {
+            Log.e(TAG, "Failed to read place details: " + e.getMessage());
+            return false;
+        }
+    }
+
+    public void put(String reference, PlaceDetails details) {
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_REFERENCE, reference);
+        values.put(COLUMN_ADDRESS, details.address);
+        values.put(COLUMN_LAT, details.lat);
+        values.put(COLUMN_LNG, details.lng);
+        values.put(COLUMN_LAST_USED, System.currentTimeMillis());
+
+        try {
+            SQLiteDatabase db = getWritableDatabase();
+            db.insertWithOnConflict(TABLE, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+
+            if (shouldPrune()) {
+                prune(db);
+            }
+        } catch (SQLException e) {
+            Log.e(TAG, "Failed to store place details: " + e.getMessage());
+        }
+    }
+
+    private synchronized boolean shouldPrune() {
+        if (++mInsertsSincePrune < PRUNE_INTERVAL) {
+            return false;
+        }
+        mInsertsSincePrune = 0;
+        return true;
+    }
+
+    private void prune(SQLiteDatabase db) {
+        long cutoff = System.currentTimeMillis() - mMaxAge;
+        int expired = db.delete(TABLE, COLUMN_LAST_USED + " < ?",
+                new String[] { Long.toString(cutoff) });
+
+        // Both deletes walk the last_used index
+        db.execSQL("DELETE FROM " + TABLE + " WHERE " + COLUMN_LAST_USED + " <= ("
+                + "SELECT " + COLUMN_LAST_USED + " FROM " + TABLE
+                + " ORDER BY " + COLUMN_LAST_USED + " DESC LIMIT 1 OFFSET ?)",
+                new Object[] { mMaxRows });
+
+        if (BuildConfig.DEBUG) {
+            Log.d(TAG, "Pruned " + expired + " expired place details");
+        }
+    }
+}
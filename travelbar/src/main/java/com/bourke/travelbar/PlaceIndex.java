@@ -0,0 +1,267 @@
+package com.bourke.travelbar;
+
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * A prefix index over places the user has already been shown, so suggestions can be given
+ * without a network round trip.
+ *
+ * Each place is indexed under its whole description and under every word in it, so "airp"
+ * finds "Dublin Airport". The keys are kept in a sorted array and searched with a binary search.
+ * The places themselves are persisted to a small file, and once there are more than the maximum
+ * the ones seen longest ago are dropped. The file is written on an executor, outside the lock,
+ * so lookups never wait on the disk, and changes made while a write is waiting share it.
+ */
+public class PlaceIndex {
+
+    private static final String TAG = "TravelBar/PlaceIndex";
+
+    // Bump when the file format changes, older files are then ignored
+    private static final int FILE_VERSION = 1;
+
+    private final File mFile;
+    private final int mMaxPlaces;
+    private final Executor mSaveExecutor;
+
+    // Held while writing the file, so two writes never overlap
+    private final Object mSaveLock = new Object();
+
+    // Places keyed by normalised description, least recently seen first
+    private final LinkedHashMap<String, Prediction> mPlaces =
+            new LinkedHashMap<String, Prediction>(16, 0.75f, true);
+
+    // Sorted search keys, mKeyPlaces[i] is the place mKeys[i] was taken from
+    private String[] mKeys = new String[0];
+    private Prediction[] mKeyPlaces = new Prediction[0];
+
+    private boolean mLoaded = false;
+    private boolean mSavePending = false;
+
+    private final Runnable mSave = new Runnable() {
+        @Override public void run() {
+            save();
+        }
+    };
+
+    /**
+     * @param saveExecutor runs the writes to the file
+     */
+    public PlaceIndex(File file, int maxPlaces, Executor saveExecutor) {
+        mFile = file;
+        mMaxPlaces = maxPlaces;
+        mSaveExecutor = saveExecutor;
+    }
+
+    /**
+     * Returns up to limit places with a word starting with the query, in alphabetical order of
+     * the matching word.
+     */
+    public synchronized List<Prediction> search(String query, int limit) {
+        ensureLoaded();
+
+        String prefix = PredictionCache.normalise(query);
+        if (prefix.length() == 0) {
+            return Collections.emptyList();
+        }
+
+        List<Prediction> matches = new ArrayList<Prediction>(limit);
+        int i=lowerBound(prefix);
+        while (i < mKeys.length && matches.size() < limit && mKeys[i].startsWith(prefix)) {
+            Prediction place = mKeyPlaces[i++];
+            if (!matches.contains(place)) {
+                matches.add(place);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Adds places to the index. A place we already have keeps its slot but takes the newer
+     * reference.
+     */
+    public synchronized void addAll(List<Prediction> places) {
+        ensureLoaded();
+
+        boolean changed = false;
+        for (Prediction place : places) {
+            String key = PredictionCache.normalise(place.description);
+            Prediction existing = mPlaces.get(key);
+            if (existing == null || !existing.reference.equals(place.reference)) {
+                mPlaces.put(key, place);
+                changed = true;
+            }
+        }
+        if (!changed) {
+            return;
+        }
+
+        while (mPlaces.size() > mMaxPlaces) {
+            mPlaces.remove(mPlaces.keySet().iterator().next());
+        }
+
+        rebuildKeys();
+
+        if (!mSavePending) {
+            mSavePending = true;
+            mSaveExecutor.execute(mSave);
+        }
+    }
+
+    public synchronized int size() {
+        ensureLoaded();
+        return mPlaces.size();
+    }
+
+    /** Index of the first key not less than prefix */
+    private int lowerBound(String prefix) {
+        int low = 0;
+        int high = mKeys.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (mKeys[mid].compareTo(prefix) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private void rebuildKeys() {
+        List<KeyEntry> entries = new ArrayList<KeyEntry>(mPlaces.size() * 3);
+        for (Map.Entry<String, Prediction> place : mPlaces.entrySet()) {
+            String description = place.getKey();
+            entries.add(new KeyEntry(description, place.getValue()));
+
+            // Every later word, so places can be found by any part of their name
+            for (int i=1; i < description.length(); i++) {
+                char previous = description.charAt(i - 1);
+                if ((previous == ' ' || previous == ',') && description.charAt(i) != ' ') {
+                    entries.add(new KeyEntry(description.substring(i), place.getValue()));
+                }
+            }
+        }
+
+        KeyEntry[] sorted = entries.toArray(new KeyEntry[entries.size()]);
+        Arrays.sort(sorted);
+
+        String[] keys = new String[sorted.length];
+        Prediction[] keyPlaces = new Prediction[sorted.length];
+        for (int i=0; i < sorted.length; i++) {
+            keys[i] = sorted[i].key;
+            keyPlaces[i] = sorted[i].place;
+        }
+        mKeys = keys;
+        mKeyPlaces = keyPlaces;
+    }
+
+    private void ensureLoaded() {
+        if (mLoaded) {
+            return;
+        }
+        mLoaded = true;
+
+        if (!mFile.exists()) {
+            return;
+        }
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(mFile)));
+            if (in.readInt() != FILE_VERSION) {
+                return;
+            }
+            int count = in.readInt();
+            for (int i=0; i < count; i++) {
+                Prediction place = new Prediction(in.readUTF(), in.readUTF());
+                mPlaces.put(PredictionCache.normalise(place.description), place);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to load place index: " + e.getMessage());
+            mPlaces.clear();
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // Ignore
+                }
+            }
+        }
+
+        rebuildKeys();
+    }
+
+    private void save() {
+        synchronized (mSaveLock) {
+            List<Prediction> places;
+            synchronized (this) {
+                // Anything added from here on needs another write
+                mSavePending = false;
+                places = new ArrayList<Prediction>(mPlaces.values());
+            }
+            write(places);
+        }
+    }
+
+    private void write(List<Prediction> places) {
+        File tmp = new File(mFile.getPath() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            out.writeInt(FILE_VERSION);
+            out.writeInt(places.size());
+            for (Prediction place : places) {
+                out.writeUTF(place.description);
+                out.writeUTF(place.reference);
+            }
+            out.close();
+            out = null;
+
+            if (!tmp.renameTo(mFile)) {
+                throw new IOException("Failed to rename " + tmp);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to save place index: " + e.getMessage());
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    // Ignore
+                }
+            }
+        }
+    }
+
+    private static class KeyEntry implements Comparable<KeyEntry> {
+        final String key;
+        final Prediction place;
+
+        KeyEntry(String key, Prediction place) {
+            this.key = key;
+            this.place = place;
+        }
+
+        @Override
+        public int compareTo(KeyEntry another) {
+            return key.compareTo(another.key);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.bourke.travelbar;
+
+/**
+ * Latency histograms for each stage of serving a {@link PlaceProvider} query.
+ *
+ * Network requests are split into connect (until the response headers arrive), download (time
+ * spent waiting on the body) and parse (the rest of the time spent decoding the body). Cursor is
+ * the time taken to fill the cursor once the data is in hand.
+ */
+public class PlaceMetrics {
+
+    public static final String[] STAGES = new String[] {
+            "connect",
+            "download",
+            "parse",
+            "cursor"
+    };
+
+    public static final int CONNECT = 0;
+    public static final int DOWNLOAD = 1;
+    public static final int PARSE = 2;
+    public static final int CURSOR = 3;
+
+    public final String endpoint;
+
+    private final LatencyHistogram[] mHistograms = new LatencyHistogram[STAGES.length];
+
+    public PlaceMetrics(String endpoint) {
+        this.endpoint = endpoint;
+        for (int i=0; i < mHistograms.length; i++) {
+            mHistograms[i] = new LatencyHistogram();
+        }
+    }
+
+    public void record(int stage, long nanos) {
+        mHistograms[stage].recordNanos(nanos);
+    }
+
+    public LatencyHistogram get(int stage) {
+        return mHistograms[stage];
+    }
+}
@@ -1,29 +1,43 @@
 package com.bourke.travelbar;
 
+import android.annotation.TargetApi;
 import android.app.SearchManager;
 import android.content.ContentProvider;
 import android.content.ContentValues;
+import android.content.Context;
 import android.content.UriMatcher;
 import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageManager;
+import android.database.AbstractCursor;
 import android.database.Cursor;
 import android.database.MatrixCursor;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
 import android.net.Uri;
+import android.os.Build;
 import android.os.Bundle;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
 import android.util.Log;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
-import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.io.UnsupportedEncodingException;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.net.SocketTimeoutException;
 import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Code adapted from http://goo.gl/qXI3l7
@@ -37,124 +51,315 @@ public class PlaceProvider extends ContentProvider {
 
     public static final Uri SEARCH_URI = Uri.parse("content://"+AUTHORITY+"/search");
     public static final Uri DETAILS_URI = Uri.parse("content://"+AUTHORITY+"/details");
+    public static final Uri QUOTA_URI = Uri.parse("content://"+AUTHORITY+"/quota");
+    public static final Uri METRICS_URI = Uri.parse("content://"+AUTHORITY+"/metrics");
+    public static final Uri CACHE_URI = Uri.parse("content://"+AUTHORITY+"/cache");
 
     private static final int SEARCH = 1;
     private static final int SUGGESTIONS = 2;
     private static final int DETAILS = 3;
+    private static final int QUOTA = 4;
+    private static final int METRICS = 5;
+    private static final int CACHE = 6;
+
+    // Maximum number of Place Details requests in flight at once
+    private static final int DETAILS_POOL_SIZE = 4;
+
+    // How long a search waits for all of its Place Details requests, in seconds
+    private static final long DETAILS_TIMEOUT = 15;
+
+    // Shared by all searches so the number of concurrent details requests stays bounded. Also
+    // writes out the place index, off the query thread
+    private static final ExecutorService mDetailsExecutor = buildDetailsExecutor();
+
+    // How long autocomplete predictions are served from the cache, in milliseconds
+    private static final long PREDICTION_CACHE_TTL = 24 * 60 * 60 * 1000;
+
+    // Number of queries whose predictions are kept in memory
+    private static final int PREDICTION_CACHE_ENTRIES = 64;
+
+    // Size limit of the on-disk prediction cache, in bytes
+    private static final long PREDICTION_CACHE_BYTES = 512 * 1024;
+
+    // How long a stored place is kept after it was last used, in milliseconds
+    private static final long DETAILS_STORE_MAX_AGE = 90L * 24 * 60 * 60 * 1000;
+
+    // Number of places kept in the details store
+    private static final int DETAILS_STORE_MAX_ROWS = 500;
+
+    // Timeouts for Places API requests, in milliseconds
+    private static final int CONNECT_TIMEOUT = 10 * 1000;
+    private static final int READ_TIMEOUT = 15 * 1000;
+
+    // Number of times a failed Places API request is retried, and the delay before the first retry
+    private static final int MAX_RETRIES = 2;
+    private static final long RETRY_BACKOFF = 500;
+
+    // Timeouts for suggestion requests, in milliseconds. Suggestions are wanted while typing, so
+    // a slow request is given up on rather than retried
+    private static final int SUGGESTIONS_CONNECT_TIMEOUT = 2 * 1000;
+    private static final int SUGGESTIONS_READ_TIMEOUT = 3 * 1000;
+
+    // Simulated latency of the stub transport, in milliseconds
+    private static final long STUB_LATENCY = 300;
+
+    // Set this meta-data to true in the manifest to serve made up responses instead of calling
+    // the Places API, see StubPlacesTransport
+    private static final String META_STUB_TRANSPORT = "com.bourke.travelbar.STUB_PLACES_TRANSPORT";
+
+    // Number of places remembered for offline suggestions
+    private static final int PLACE_INDEX_SIZE = 500;
+
+    // Most suggestions taken from remembered places, ahead of the Places API results
+    private static final int LOCAL_SUGGESTIONS = 3;
+
+    // Uncompressed asset used for place search when offline
+    private static final String GAZETTEER_ASSET = "gazetteer.bin";
+
+    // Most places returned from the gazetteer for a query
+    private static final int OFFLINE_RESULTS = 10;
+
+    // Most Places API requests allowed in a burst, and the sustained rate per second
+    private static final int QUOTA_BURST = 10;
+    private static final double QUOTA_RATE = 2;
+
+    // Places API requests allowed per day
+    private static final int QUOTA_DAILY_LIMIT = 1000;
+
+    // Backoff after failed Places API requests, in milliseconds
+    private static final long QUOTA_BACKOFF = 2 * 1000;
+    private static final long QUOTA_MAX_BACKOFF = 5 * 60 * 1000;
+
+    // Backoff after the Places API reports we are over quota, in milliseconds
+    private static final long QUOTA_OVER_LIMIT_BACKOFF = 15 * 60 * 1000;
 
     // Defines a set of uris allowed with this content provider
     private static final UriMatcher mUriMatcher = buildUriMatcher();
 
+    private PlacesTransport mTransport;
+
+    // Used for the requests made for suggestions
+    private PlacesTransport mSuggestionsTransport;
+
+    private PlacesQuota mQuota;
+
+    // Latencies of the work done for each kind of query
+    private final PlaceMetrics mSearchMetrics = new PlaceMetrics("search");
+    private final PlaceMetrics mSuggestionsMetrics = new PlaceMetrics("suggestions");
+    private final PlaceMetrics mDetailsMetrics = new PlaceMetrics("details");
+
+    // Requests in progress, keyed by url so identical concurrent requests are only made once
+    private final SingleFlight<String, List<Prediction>> mPlacesFlights =
+            new SingleFlight<String, List<Prediction>>();
+    private final SingleFlight<String, List<Prediction>> mSuggestionsFlights =
+            new SingleFlight<String, List<Prediction>>();
+    private final SingleFlight<String, PlaceDetails> mDetailsFlights =
+            new SingleFlight<String, PlaceDetails>();
+
+    private PredictionCache mPredictionCache;
+
+    private PlaceDetailsStore mDetailsStore;
+
+    private PlaceIndex mPlaceIndex;
+
+    // Null if the app was built without a gazetteer
+    private Gazetteer mGazetteer;
+
     @Override
     public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs,
                         String sortOrder) {
-        MatrixCursor cursor = null;
-        String response;
+        return runQuery(uri, selectionArgs, null);
+    }
+
+    /**
+     * The cancellation signal reaches every network read made for the query, so a search or
+     * details lookup whose loader has been reset or restarted stops as soon as it is cancelled
+     * and throws an {@link OperationCanceledException}. Suggestions come from SearchManager
+     * through the query above, which has no signal, so they always run to the end. Only called
+     * from API 16, the rest of the query path uses {@link QueryCancellation} so it still loads
+     * before that.
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs,
+                        String sortOrder, CancellationSignal cancellationSignal) {
+        try {
+            return runQuery(uri, selectionArgs, QueryCancellation.from(cancellationSignal));
+        } catch (QueryCanceledException e) {
+            throw new OperationCanceledException(e.getMessage());
+        }
+    }
+
+    private Cursor runQuery(Uri uri, String[] selectionArgs,
+                            QueryCancellation cancellationSignal) {
+        AbstractCursor cursor = null;
+        long cursorStart;
 
         switch(mUriMatcher.match(uri)) {
             case SUGGESTIONS:
-                cursor = new MatrixCursor(new String[] {
+                MatrixCursor suggestions = new MatrixCursor(new String[] {
                         "_id",
                         SearchManager.SUGGEST_COLUMN_TEXT_1,
                         SearchManager.SUGGEST_COLUMN_INTENT_EXTRA_DATA
                 });
 
-                // Get Places from Google Places API
-                response = getPlaces(selectionArgs);
+                // Places seen before can be suggested without going to the network. Offline,
+                // only those whose details are stored can be looked up once picked
+                boolean online = isOnline();
+                List<Prediction> places = new ArrayList<Prediction>();
+                for (Prediction place : mPlaceIndex.search(selectionArgs[0],
+                        online ? LOCAL_SUGGESTIONS : OFFLINE_RESULTS)) {
+                    if (places.size() == LOCAL_SUGGESTIONS) {
+                        break;
+                    }
+                    if (online || mDetailsStore.contains(place.reference)) {
+                        places.add(place);
+                    }
+                }
 
-                try {
-                    JSONObject json = new JSONObject(response);
-                    JSONArray predictions = json.getJSONArray("predictions");
-
-                    // Creating cursor object with places
-                    for (int i=0; i < predictions.length(); i++) {
-                        JSONObject place = predictions.getJSONObject(i);
-
-                        // Adding place details to cursor
-                        String[] row = new String[] {
-                                Integer.toString(i),
-                                place.getString("description"),
-                                place.getString("reference")
-                        };
-                        cursor.addRow(row);
+                // Then add what the Google Places API has, unless there's no way to reach it
+                if (online) {
+                    for (Prediction place : getPlaces(selectionArgs, true, cancellationSignal,
+                            mSuggestionsMetrics)) {
+                        if (!containsPlace(places, place)) {
+                            places.add(place);
+                        }
+                    }
+                } else if (mGazetteer != null) {
+                    // Otherwise fill up from the offline gazetteer
+                    for (int index : mGazetteer.search(selectionArgs[0], OFFLINE_RESULTS)) {
+                        Prediction place = new Prediction(mGazetteer.getName(index),
+                                Gazetteer.getReference(index));
+                        if (!containsPlace(places, place)) {
+                            places.add(place);
+                        }
                     }
-                } catch (JSONException e) {
-                    e.printStackTrace();
                 }
+
+                // Creating cursor object with places
+                cursorStart = System.nanoTime();
+                for (int i=0; i < places.size(); i++) {
+                    Prediction place = places.get(i);
+
+                    // Adding place details to cursor
+                    String[] row = new String[] {
+                            Integer.toString(i),
+                            place.description,
+                            place.reference
+                    };
+                    suggestions.addRow(row);
+                }
+                mSuggestionsMetrics.record(PlaceMetrics.CURSOR, System.nanoTime() - cursorStart);
+                cursor = suggestions;
                 break;
 
             case SEARCH:
                 // Define a cursor object with columns description, lat and lng
-                cursor = new MatrixCursor(new String[] {
-                        "description",
-                        "lat",
-                        "lng"
-                });
+                PlaceCursor results = new PlaceCursor(OFFLINE_RESULTS);
 
                 // Get Places from Google Places API
-                response = getPlaces(selectionArgs);
-
-                try {
-                    JSONObject json = new JSONObject(response);
-                    JSONArray predictions = json.getJSONArray("predictions");
-
+                List<Prediction> predictions = isOnline()
+                        ? getPlaces(selectionArgs, false, cancellationSignal, mSearchMetrics)
+                        : Collections.<Prediction>emptyList();
+
+                if (predictions.isEmpty() && mGazetteer != null) {
+                    // Offline or nothing found, the gazetteer already has the coordinates
+                    cursorStart = System.nanoTime();
+                    for (int index : mGazetteer.search(selectionArgs[0], OFFLINE_RESULTS)) {
+                        results.addRow(mGazetteer.getName(index), mGazetteer.getLat(index),
+                                mGazetteer.getLng(index));
+                    }
+                } else {
                     // Finding latitude and longitude for each place using Google Places Details API
-                    for (int i=0; i < predictions.length(); i++) {
-                        JSONObject prediction = predictions.getJSONObject(i);
-
-                        String placeReference = prediction.getString("reference");
-                        String placeDetailsJson = getPlaceDetails(placeReference);
-                        JSONObject placeDetails = new JSONObject(placeDetailsJson);
-
-                        String placeDescription = prediction.getString("description");
-                        String placeLat = placeDetails
-                                .getJSONObject("result")
-                                .getJSONObject("geometry")
-                                .getJSONObject("location").getString("lat");
-                        String placeLon = placeDetails
-                                .getJSONObject("result")
-                                .getJSONObject("geometry")
-                                .getJSONObject("location").getString("lng");
-
-                        // Adding place details to cursor
-                        cursor.addRow(new String[] {
-                                placeDescription,
-                                placeLat,
-                                placeLon
-                        });
+                    PlaceDetails[] details = getPlaceDetails(predictions, cancellationSignal,
+                            mSearchMetrics);
+                    cursorStart = System.nanoTime();
+                    for (int i=0; i < details.length; i++) {
+                        // Places whose details lookup failed are left out
+                        if (details[i] != null) {
+                            results.addRow(predictions.get(i).description, details[i].lat,
+                                    details[i].lng);
+                        }
                     }
-                } catch (JSONException e) {
-                    e.printStackTrace();
                 }
+                mSearchMetrics.record(PlaceMetrics.CURSOR, System.nanoTime() - cursorStart);
+                cursor = results;
                 break;
 
             case DETAILS:
-                cursor = new MatrixCursor(new String[] {
-                        "description",
-                        "lat",
-                        "lng"
-                });
+                PlaceCursor place = new PlaceCursor(1);
 
-                response = getPlaceDetails(selectionArgs[0]);
+                PlaceDetails details = getPlaceDetails(selectionArgs[0], cancellationSignal,
+                        mDetailsMetrics);
 
-                try {
-                    JSONObject json = new JSONObject(response);
-                    JSONObject result = json.getJSONObject("result");
-
-                    String formattedAddress = result.getString("formatted_address");
-                    String lat = result.getJSONObject("geometry")
-                            .getJSONObject("location").getString("lat");
-                    String lng = result.getJSONObject("geometry")
-                            .getJSONObject("location").getString("lng");
-
-                    cursor.addRow(new String[] {
-                            formattedAddress,
-                            lat,
-                            lng
-                    });
-                } catch (JSONException e) {
-                    e.printStackTrace();
+                cursorStart = System.nanoTime();
+                if (details != null) {
+                    place.addRow(details.address, details.lat, details.lng);
                 }
+                mDetailsMetrics.record(PlaceMetrics.CURSOR, System.nanoTime() - cursorStart);
+                cursor = place;
+                break;
+
+            case QUOTA:
+                MatrixCursor quota = new MatrixCursor(new String[] {
+                        "available_tokens",
+                        "requests_today",
+                        "daily_limit",
+                        "backoff_remaining"
+                });
+                quota.addRow(new Object[] {
+                        mQuota.getAvailableTokens(),
+                        mQuota.getRequestsToday(),
+                        mQuota.getDailyLimit(),
+                        mQuota.getBackoffRemaining()
+                });
+                cursor = quota;
+                break;
+
+            case METRICS:
+                MatrixCursor metrics = new MatrixCursor(new String[] {
+                        "endpoint",
+                        "stage",
+                        "count",
+                        "p50",
+                        "p90",
+                        "p99",
+                        "max"
+                });
+                for (PlaceMetrics endpoint : new PlaceMetrics[] {
+                        mSearchMetrics, mSuggestionsMetrics, mDetailsMetrics }) {
+                    for (int stage=0; stage < PlaceMetrics.STAGES.length; stage++) {
+                        LatencyHistogram histogram = endpoint.get(stage);
+                        metrics.addRow(new Object[] {
+                                endpoint.endpoint,
+                                PlaceMetrics.STAGES[stage],
+                                histogram.getCount(),
+                                histogram.getPercentile(0.5),
+                                histogram.getPercentile(0.9),
+                                histogram.getPercentile(0.99),
+                                histogram.getMax()
+                        });
+                    }
+                }
+                cursor = metrics;
+                break;
+
+            case CACHE:
+                MatrixCursor cache = new MatrixCursor(new String[] {
+                        "memory_hits",
+                        "disk_hits",
+                        "stale_hits",
+                        "misses",
+                        "evictions"
+                });
+                cache.addRow(new Object[] {
+                        mPredictionCache.getMemoryHitCount(),
+                        mPredictionCache.getDiskHitCount(),
+                        mPredictionCache.getStaleHitCount(),
+                        mPredictionCache.getMissCount(),
+                        mPredictionCache.getEvictionCount()
+                });
+                cursor = cache;
                 break;
             }
         return cursor;
@@ -177,7 +382,35 @@ public class PlaceProvider extends ContentProvider {
 
     @Override
     public boolean onCreate() {
-        return false;
+        if (getMetaData().getBoolean(META_STUB_TRANSPORT)) {
+            mTransport = new StubPlacesTransport(STUB_LATENCY);
+            mSuggestionsTransport = mTransport;
+        } else {
+            mTransport = new HttpPlacesTransport(CONNECT_TIMEOUT, READ_TIMEOUT, MAX_RETRIES,
+                    RETRY_BACKOFF);
+            mSuggestionsTransport = new HttpPlacesTransport(SUGGESTIONS_CONNECT_TIMEOUT,
+                    SUGGESTIONS_READ_TIMEOUT, 0, 0);
+        }
+
+        mQuota = new PlacesQuota(
+                getContext().getSharedPreferences("places_quota", Context.MODE_PRIVATE),
+                QUOTA_BURST, QUOTA_RATE, QUOTA_DAILY_LIMIT, QUOTA_BACKOFF, QUOTA_MAX_BACKOFF,
+                QUOTA_OVER_LIMIT_BACKOFF);
+
+        mPredictionCache = new PredictionCache(
+                new File(getContext().getCacheDir(), "predictions"),
+                PREDICTION_CACHE_ENTRIES, PREDICTION_CACHE_BYTES, PREDICTION_CACHE_TTL);
+        mDetailsStore = new PlaceDetailsStore(getContext(), DETAILS_STORE_MAX_AGE,
+                DETAILS_STORE_MAX_ROWS);
+        mPlaceIndex = new PlaceIndex(new File(getContext().getFilesDir(), "place_index"),
+                PLACE_INDEX_SIZE, mDetailsExecutor);
+
+        try {
+            mGazetteer = Gazetteer.open(getContext().getAssets(), GAZETTEER_ASSET);
+        } catch (IOException e) {
+            Log.w(TAG, "Offline place search unavailable: " + e.getMessage());
+        }
+        return true;
     }
 
     @Override
@@ -185,39 +418,33 @@ public class PlaceProvider extends ContentProvider {
         return 0;
     }
 
-    /** A method to download json data from url */
-    private String downloadUrl(String strUrl) throws IOException {
-        String data = "";
-        InputStream in = null;
-        HttpURLConnection urlConnection = null;
+    /** A method to download json data from url, decoding it as it arrives */
+    private <T> T downloadUrl(PlacesTransport transport, String strUrl, ResponseParser<T> parser,
+                              QueryCancellation signal, PlaceMetrics metrics)
+            throws IOException {
+        mQuota.acquire();
         try {
-            URL url = new URL(strUrl);
-
-            // Creating an http connection to communicate with url
-            urlConnection = (HttpURLConnection) url.openConnection();
-            urlConnection.connect();
-
-            // Reading data from url
-            in = urlConnection.getInputStream();
-
-            BufferedReader br = new BufferedReader(new InputStreamReader(in));
-            StringBuilder sb  = new StringBuilder();
-
-            String line;
-            while ((line = br.readLine()) != null) {
-                sb.append(line);
+            T result = transport.get(strUrl, parser, signal, metrics);
+            mQuota.onSuccess();
+            return result;
+        } catch (SocketTimeoutException e) {
+            // A slow or dead link, which backing off should help with
+            mQuota.onFailure();
+            throw e;
+        } catch (InterruptedIOException e) {
+            // Given up on by us, not a failure of the API
+            throw e;
+        } catch (PlacesStatusException e) {
+            if (e.isOverQueryLimit()) {
+                mQuota.onOverQuota();
+            } else {
+                mQuota.onFailure();
             }
-
-            data = sb.toString();
-            br.close();
-        } finally {
-            if (in != null) {
-                in.close();
-            }
-            urlConnection.disconnect();
+            throw e;
+        } catch (IOException e) {
+            mQuota.onFailure();
+            throw e;
         }
-
-        return data;
     }
 
     private String getPlaceDetailsUrl(String ref) {
@@ -268,28 +495,196 @@ public class PlaceProvider extends ContentProvider {
                 .append(parameters).toString();
     }
 
-    private String getPlaces(String[] params) {
-        // For storing data from web service
-        String data = "";
-        String url = getPlacesUrl(params[0]);
-        // Fetching the data from web service in background
+    /**
+     * Returns the autocomplete predictions for params[0], from {@link #mPredictionCache} when
+     * possible. Failed requests give an empty list and are not cached.
+     *
+     * @param suggestions whether the request is made with {@link #mSuggestionsTransport}. These
+     *                    requests aren't shared with searches, so a search never ends up with a
+     *                    suggestion's quicker timeout
+     */
+    private List<Prediction> getPlaces(String[] params, boolean suggestions,
+                                       final QueryCancellation signal,
+                                       final PlaceMetrics metrics) {
+        final String query = params[0];
+
+        List<Prediction> predictions = mPredictionCache.get(query);
+        if (predictions != null) {
+            return predictions;
+        }
+
+        final String url = getPlacesUrl(query);
+        final PlacesTransport transport = suggestions ? mSuggestionsTransport : mTransport;
+        SingleFlight<String, List<Prediction>> flights =
+                suggestions ? mSuggestionsFlights : mPlacesFlights;
+        // Fetching the data from web service in background, shared with anyone else asking for
+        // the same url meanwhile
         try {
-            data = downloadUrl(url);
+            return flights.execute(url, new Callable<List<Prediction>>() {
+                @Override
+                public List<Prediction> call() throws IOException {
+                    List<Prediction> predictions = Collections.unmodifiableList(downloadUrl(
+                            transport, url, PlacesJsonDecoder.PREDICTIONS, signal, metrics));
+                    mPredictionCache.put(query, predictions);
+                    mPlaceIndex.addAll(predictions);
+                    return predictions;
+                }
+            }, signal);
+        } catch (ThrottledException e) {
+            Log.w(TAG, "Places request throttled: " + e.getMessage());
+
+            // An expired answer is better than none
+            List<Prediction> stale = mPredictionCache.getStale(query);
+            return stale != null ? stale : Collections.<Prediction>emptyList();
         } catch (IOException e) {
             e.printStackTrace();
+            return Collections.emptyList();
         }
-        return data;
     }
 
-    private String getPlaceDetails(String reference){
-        String data = "";
-        String url = getPlaceDetailsUrl(reference);
+    /**
+     * Returns the details for a place reference, from {@link #mDetailsStore} when we have
+     * resolved it before. Returns null if the lookup failed.
+     */
+    private PlaceDetails getPlaceDetails(final String reference, final QueryCancellation signal,
+                                         final PlaceMetrics metrics){
+        if (Gazetteer.isReference(reference)) {
+            return getGazetteerDetails(reference);
+        }
+
+        PlaceDetails details = mDetailsStore.get(reference);
+        if (details != null) {
+            return details;
+        }
+
+        if (!isOnline()) {
+            return null;
+        }
+
+        final String url = getPlaceDetailsUrl(reference);
         try {
-            data = downloadUrl(url);
+            return mDetailsFlights.execute(url, new Callable<PlaceDetails>() {
+                @Override
+                public PlaceDetails call() throws IOException {
+                    PlaceDetails details = downloadUrl(mTransport, url, PlacesJsonDecoder.DETAILS,
+                            signal, metrics);
+                    mDetailsStore.put(reference, details);
+                    return details;
+                }
+            }, signal);
+        } catch (ThrottledException e) {
+            Log.w(TAG, "Places request throttled: " + e.getMessage());
+            return null;
         } catch (IOException e) {
             e.printStackTrace();
+            return null;
+        }
+    }
+
+    private PlaceDetails getGazetteerDetails(String reference) {
+        int index = mGazetteer != null ? mGazetteer.indexOf(reference) : -1;
+        if (index == -1) {
+            return null;
+        }
+        return new PlaceDetails(mGazetteer.getName(index), mGazetteer.getLat(index),
+                mGazetteer.getLng(index));
+    }
+
+    /**
+     * Looks up the details for each prediction in parallel on {@link #mDetailsExecutor}.
+     *
+     * The returned details are in prediction order. An entry is null if its lookup failed or did
+     * not finish within {@link #DETAILS_TIMEOUT}, so one bad prediction doesn't cost the whole
+     * search.
+     * If the calling thread is interrupted or the signal is cancelled all outstanding lookups
+     * are cancelled.
+     */
+    private PlaceDetails[] getPlaceDetails(List<Prediction> predictions,
+                                           final QueryCancellation signal,
+                                           final PlaceMetrics metrics) {
+        PlaceDetails[] details = new PlaceDetails[predictions.size()];
+        final List<Future<PlaceDetails>> futures =
+                new ArrayList<Future<PlaceDetails>>(predictions.size());
+
+        for (final Prediction prediction : predictions) {
+            futures.add(mDetailsExecutor.submit(new Callable<PlaceDetails>() {
+                @Override
+                public PlaceDetails call() {
+                    return getPlaceDetails(prediction.reference, signal, metrics);
+                }
+            }));
+        }
+
+        if (signal != null) {
+            // Stop waiting on the lookups straight away once the search is cancelled
+            signal.setOnCancelListener(new Runnable() {
+                @Override
+                public void run() {
+                    for (Future<PlaceDetails> future : futures) {
+                        future.cancel(true);
+                    }
+                }
+            });
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(DETAILS_TIMEOUT);
+        try {
+            for (int i=0; i < futures.size(); i++) {
+                try {
+                    long timeout = deadline - System.nanoTime();
+                    details[i] = futures.get(i).get(timeout, TimeUnit.NANOSECONDS);
+                } catch (ExecutionException e) {
+                    Log.e(TAG, "Failed to get place details: " + e.getCause());
+                } catch (TimeoutException e) {
+                    Log.e(TAG, "Timed out getting place details");
+                } catch (CancellationException e) {
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (signal != null) {
+                signal.setOnCancelListener(null);
+            }
+
+            // Anything still running is either late or no longer wanted
+            for (Future<PlaceDetails> future : futures) {
+                future.cancel(true);
+            }
+        }
+
+        if (signal != null) {
+            signal.throwIfCanceled();
         }
-        return data;
+        return details;
+    }
+
+    private static ExecutorService buildDetailsExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(DETAILS_POOL_SIZE, DETAILS_POOL_SIZE,
+                30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+
+        // Let the pool drain completely between searches
+        executor.allowCoreThreadTimeOut(true);
+
+        return executor;
+    }
+
+    private static boolean containsPlace(List<Prediction> places, Prediction place) {
+        String description = PredictionCache.normalise(place.description);
+        for (Prediction p : places) {
+            if (PredictionCache.normalise(p.description).equals(description)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isOnline() {
+        ConnectivityManager cm = (ConnectivityManager) getContext().getSystemService(
+                Context.CONNECTIVITY_SERVICE);
+        NetworkInfo networkInfo = cm.getActiveNetworkInfo();
+        return networkInfo != null && networkInfo.isConnected();
     }
 
     private static UriMatcher buildUriMatcher() {
@@ -304,21 +699,33 @@ public class PlaceProvider extends ContentProvider {
         // URI for Details
         uriMatcher.addURI(AUTHORITY, "details", DETAILS);
 
+        // URI for the state of the Places API request budget
+        uriMatcher.addURI(AUTHORITY, "quota", QUOTA);
+
+        // URI for latency percentiles, in microseconds, of each stage of the queries above
+        uriMatcher.addURI(AUTHORITY, "metrics", METRICS);
+
+        // URI for prediction cache hits, misses and evictions since the provider started
+        uriMatcher.addURI(AUTHORITY, "cache", CACHE);
+
         return uriMatcher;
     }
 
     private String getBrowserKey() {
-        String browserKey = "";
+        String browserKey = getMetaData().getString("com.google.android.maps.v2.BROWSER_KEY");
+        return browserKey != null ? browserKey : "";
+    }
+
+    /** Returns the application meta-data, or an empty bundle if it can't be loaded */
+    private Bundle getMetaData() {
+        Bundle bundle = null;
         try {
             ApplicationInfo ai = getContext().getPackageManager().getApplicationInfo(
                     getContext().getPackageName(), PackageManager.GET_META_DATA);
-            Bundle bundle = ai.metaData;
-            browserKey = bundle.getString("com.google.android.maps.v2.BROWSER_KEY");
+            bundle = ai.metaData;
         } catch (PackageManager.NameNotFoundException e) {
             Log.e(TAG, "Failed to load meta-data, NameNotFound: " + e.getMessage());
-        } catch (NullPointerException e) {
-            Log.e(TAG, "Failed to load meta-data, NullPointer: " + e.getMessage());
         }
-        return browserKey;
+        return bundle != null ? bundle : new Bundle();
     }
 }
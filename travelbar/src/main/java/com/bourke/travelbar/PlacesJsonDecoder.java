@@ -0,0 +1,190 @@
+package com.bourke.travelbar;
+
+import android.util.JsonReader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streaming decoders for Places API responses.
+ *
+ * Only the fields we use are materialised, everything else is skipped as it is read. A response
+ * whose status isn't OK or ZERO_RESULTS throws a {@link PlacesStatusException}.
+ */
+public final class PlacesJsonDecoder {
+
+    /** Decodes an Autocomplete response into its predictions */
+    public static final ResponseParser<List<Prediction>> PREDICTIONS =
+            new ResponseParser<List<Prediction>>() {
+                @Override
+                public List<Prediction> parse(InputStream in) throws IOException {
+                    return readPredictions(newReader(in));
+                }
+            };
+
+    /** Decodes a Details response into its address and location */
+    public static final ResponseParser<PlaceDetails> DETAILS =
+            new ResponseParser<PlaceDetails>() {
+                @Override
+                public PlaceDetails parse(InputStream in) throws IOException {
+                    return readPlaceDetails(newReader(in));
+                }
+            };
+
+    private PlacesJsonDecoder() {
+        // No instances.
+    }
+
+    private static JsonReader newReader(InputStream in) throws IOException {
+        return new JsonReader(new InputStreamReader(in, "UTF-8"));
+    }
+
+    static List<Prediction> readPredictions(JsonReader reader) throws IOException {
+        List<Prediction> predictions = new ArrayList<Prediction>();
+        String status = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("status".equals(name)) {
+                status = reader.nextString();
+            } else if ("predictions".equals(name)) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    Prediction prediction = readPrediction(reader);
+                    if (prediction != null) {
+                        predictions.add(prediction);
+                    }
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        checkStatus(status);
+        return predictions;
+    }
+
+    /** Returns null for a prediction missing either of the fields we need */
+    private static Prediction readPrediction(JsonReader reader) throws IOException {
+        String description = null;
+        String reference = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("description".equals(name)) {
+                description = reader.nextString();
+            } else if ("reference".equals(name)) {
+                reference = reader.nextString();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (description == null || reference == null) {
+            return null;
+        }
+        return new Prediction(description, reference);
+    }
+
+    static PlaceDetails readPlaceDetails(JsonReader reader) throws IOException {
+        PlaceDetails details = null;
+        String status = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("status".equals(name)) {
+                status = reader.nextString();
+            } else if ("result".equals(name)) {
+                details = readResult(reader);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        checkStatus(status);
+        if (details == null) {
+            throw new IOException("Details response has no address and location");
+        }
+        return details;
+    }
+
+    private static void checkStatus(String status) throws PlacesStatusException {
+        // Treat a missing status as OK, what we need was either there or not
+        if (status != null && !"OK".equals(status) && !"ZERO_RESULTS".equals(status)) {
+            throw new PlacesStatusException(status);
+        }
+    }
+
+    /** Returns null for a result missing either of the fields we need */
+    private static PlaceDetails readResult(JsonReader reader) throws IOException {
+        String address = null;
+        double[] location = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("formatted_address".equals(name)) {
+                address = reader.nextString();
+            } else if ("geometry".equals(name)) {
+                location = readGeometry(reader);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (address == null || location == null) {
+            return null;
+        }
+        return new PlaceDetails(address, location[0], location[1]);
+    }
+
+    private static double[] readGeometry(JsonReader reader) throws IOException {
+        double[] location = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if ("location".equals(reader.nextName())) {
+                location = readLatLng(reader);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        return location;
+    }
+
+    private static double[] readLatLng(JsonReader reader) throws IOException {
+        double lat = Double.NaN;
+        double lng = Double.NaN;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("lat".equals(name)) {
+                lat = reader.nextDouble();
+            } else if ("lng".equals(name)) {
+                lng = reader.nextDouble();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (Double.isNaN(lat) || Double.isNaN(lng)) {
+            return null;
+        }
+        return new double[] { lat, lng };
+    }
+}
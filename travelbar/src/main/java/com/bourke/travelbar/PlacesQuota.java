@@ -0,0 +1,153 @@
+package com.bourke.travelbar;
+
+import android.content.SharedPreferences;
+import android.os.SystemClock;
+
+import java.util.TimeZone;
+
+/**
+ * Client side budget for Places API requests.
+ *
+ * A token bucket smooths out bursts such as fast typing, a daily counter keeps us under the API
+ * quota and is persisted so it survives restarts, and failures push back further requests with
+ * an exponential backoff. An over quota answer from the API backs off for longer.
+ */
+public class PlacesQuota {
+
+    private static final String PREF_DAY = "quota_day";
+    private static final String PREF_REQUESTS = "quota_requests";
+
+    private static final long DAY = 24 * 60 * 60 * 1000;
+
+    private final SharedPreferences mPrefs;
+
+    private final int mBucketCapacity;
+    private final double mRefillPerMs;
+    private final int mDailyLimit;
+    private final long mBackoffBase;
+    private final long mBackoffMax;
+    private final long mOverQuotaBackoff;
+
+    private double mTokens;
+    private long mLastRefill;
+
+    // Day number the request count belongs to, quotas reset at midnight Pacific Time
+    private long mDay;
+    private int mRequestsToday;
+
+    private int mConsecutiveFailures = 0;
+    private long mBackoffUntil = 0;
+
+    /**
+     * @param bucketCapacity most requests allowed in a burst
+     * @param refillPerSecond sustained requests per second
+     * @param dailyLimit requests allowed per day
+     * @param backoffBase delay after the first failure in milliseconds, doubled for each one after
+     * @param backoffMax longest delay after failures in milliseconds
+     * @param overQuotaBackoff delay after an over quota answer in milliseconds
+     */
+    public PlacesQuota(SharedPreferences prefs, int bucketCapacity, double refillPerSecond,
+                       int dailyLimit, long backoffBase, long backoffMax,
+                       long overQuotaBackoff) {
+        mPrefs = prefs;
+        mBucketCapacity = bucketCapacity;
+        mRefillPerMs = refillPerSecond / 1000;
+        mDailyLimit = dailyLimit;
+        mBackoffBase = backoffBase;
+        mBackoffMax = backoffMax;
+        mOverQuotaBackoff = overQuotaBackoff;
+
+        mTokens = bucketCapacity;
+        mLastRefill = SystemClock.elapsedRealtime();
+
+        mDay = prefs.getLong(PREF_DAY, today());
+        mRequestsToday = prefs.getInt(PREF_REQUESTS, 0);
+    }
+
+    /**
+     * Takes the budget for one request.
+     *
+     * @throws ThrottledException if we are backing off, out of tokens or out of daily quota
+     */
+    public synchronized void acquire() throws ThrottledException {
+        long now = SystemClock.elapsedRealtime();
+
+        if (now < mBackoffUntil) {
+            throw new ThrottledException("Backing off for " + (mBackoffUntil - now) + "ms");
+        }
+
+        rollDay();
+        if (mRequestsToday >= mDailyLimit) {
+            throw new ThrottledException("Daily limit of " + mDailyLimit + " requests reached");
+        }
+
+        refill(now);
+        if (mTokens < 1) {
+            throw new ThrottledException("Request rate limit reached");
+        }
+
+        mTokens -= 1;
+        mRequestsToday++;
+        mPrefs.edit()
+                .putLong(PREF_DAY, mDay)
+                .putInt(PREF_REQUESTS, mRequestsToday)
+                .apply();
+    }
+
+    public synchronized void onSuccess() {
+        mConsecutiveFailures = 0;
+    }
+
+    public synchronized void onFailure() {
+        long delay = Math.min(mBackoffBase << Math.min(mConsecutiveFailures, 20), mBackoffMax);
+        mConsecutiveFailures++;
+        backoff(delay);
+    }
+
+    public synchronized void onOverQuota() {
+        mConsecutiveFailures++;
+        backoff(mOverQuotaBackoff);
+    }
+
+    /** Whole requests that could be made right now without waiting for a refill */
+    public synchronized int getAvailableTokens() {
+        refill(SystemClock.elapsedRealtime());
+        return (int) mTokens;
+    }
+
+    public synchronized int getRequestsToday() {
+        rollDay();
+        return mRequestsToday;
+    }
+
+    public int getDailyLimit() {
+        return mDailyLimit;
+    }
+
+    /** Milliseconds left before requests are allowed again after failures, 0 if not backing off */
+    public synchronized long getBackoffRemaining() {
+        return Math.max(0, mBackoffUntil - SystemClock.elapsedRealtime());
+    }
+
+    private void backoff(long delay) {
+        mBackoffUntil = Math.max(mBackoffUntil, SystemClock.elapsedRealtime() + delay);
+    }
+
+    private void refill(long now) {
+        mTokens = Math.min(mBucketCapacity, mTokens + (now - mLastRefill) * mRefillPerMs);
+        mLastRefill = now;
+    }
+
+    private void rollDay() {
+        long today = today();
+        if (today != mDay) {
+            mDay = today;
+            mRequestsToday = 0;
+        }
+    }
+
+    private static long today() {
+        long now = System.currentTimeMillis();
+        return (now + TimeZone.getTimeZone("America/Los_Angeles").getOffset(now)) / DAY;
+    }
+}
@@ -0,0 +1,22 @@
+package com.bourke.travelbar;
+
+import java.io.IOException;
+
+/**
+ * Thrown when the Places API answers with a status other than OK or ZERO_RESULTS.
+ */
+public class PlacesStatusException extends IOException {
+
+    public static final String OVER_QUERY_LIMIT = "OVER_QUERY_LIMIT";
+
+    public final String status;
+
+    public PlacesStatusException(String status) {
+        super("Places API status " + status);
+        this.status = status;
+    }
+
+    public boolean isOverQueryLimit() {
+        return OVER_QUERY_LIMIT.equals(status);
+    }
+}
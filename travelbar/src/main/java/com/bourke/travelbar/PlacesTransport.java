@@ -0,0 +1,17 @@
+package com.bourke.travelbar;
+
+import java.io.IOException;
+
+/**
+ * Fetches a Places API url and hands the response body to a parser.
+ */
+public interface PlacesTransport {
+
+    /**
+     * @param signal checked while the request is made and its response read, may be null
+     * @param metrics where to record how long the request took, may be null
+     * @throws QueryCanceledException if the signal is cancelled meanwhile
+     */
+    <T> T get(String url, ResponseParser<T> parser, QueryCancellation signal,
+              PlaceMetrics metrics) throws IOException;
+}
@@ -0,0 +1,19 @@
+package com.bourke.travelbar;
+
+/**
+ * A single result from the Places Autocomplete API.
+ */
+public class Prediction {
+
+    public final String description;
+    public final String reference;
+
+    public Prediction(String description, String reference) {
+        this.description = description;
+        this.reference = reference;
+    }
+
+    @Override public String toString() {
+        return description;
+    }
+}
@@ -0,0 +1,283 @@
+package com.bourke.travelbar;
+
+import android.util.Log;
+import android.util.LruCache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Caches autocomplete predictions keyed by normalised query text.
+ *
+ * Lookups go to an in-memory LRU first and then to a directory of small files on disk, so a
+ * query survives the process being killed. Entries older than the TTL are treated as misses but
+ * can still be asked for with {@link #getStale}, and the disk tier drops its least recently
+ * written files once it grows past its size limit.
+ */
+public class PredictionCache {
+
+    private static final String TAG = "TravelBar/PredictionCache";
+
+    // Bump when the on-disk entry format changes, older files are then ignored
+    private static final int DISK_VERSION = 1;
+
+    private final LruCache<String, Entry> mMemory;
+
+    private final File mDirectory;
+    private final long mMaxDiskBytes;
+    private final long mTtl;
+
+    // Running total of bytes on disk, -1 until the directory has been scanned
+    private long mDiskBytes = -1;
+
+    private int mMemoryHits;
+    private int mDiskHits;
+    private int mMisses;
+    private int mStaleHits;
+    private int mDiskEvictions;
+
+    /**
+     * @param directory where to keep the disk tier, created if needed
+     * @param maxMemoryEntries number of queries kept in memory
+     * @param maxDiskBytes size limit of the disk tier
+     * @param ttl how long an entry is served for, in milliseconds
+     */
+    public PredictionCache(File directory, int maxMemoryEntries, long maxDiskBytes, long ttl) {
+        mMemory = new LruCache<String, Entry>(maxMemoryEntries);
+        mDirectory = directory;
+        mMaxDiskBytes = maxDiskBytes;
+        mTtl = ttl;
+    }
+
+    /**
+     * Returns the cached predictions for a query, or null if there is no fresh entry.
+     */
+    public synchronized List<Prediction> get(String query) {
+        String key = normalise(query);
+        long now = System.currentTimeMillis();
+
+        Entry entry = mMemory.get(key);
+        if (entry != null && !entry.isExpired(now, mTtl)) {
+            mMemoryHits++;
+            return entry.predictions;
+        }
+
+        entry = readFromDisk(key);
+        if (entry != null && !entry.isExpired(now, mTtl)) {
+            mMemory.put(key, entry);
+            mDiskHits++;
+            return entry.predictions;
+        }
+
+        // Expired entries are kept around for getStale()
+        mMisses++;
+        return null;
+    }
+
+    /**
+     * Returns the cached predictions for a query however old they are, or null if there are
+     * none. For when an old answer is better than no answer.
+     */
+    public synchronized List<Prediction> getStale(String query) {
+        String key = normalise(query);
+
+        Entry entry = mMemory.get(key);
+        if (entry == null) {
+            entry = readFromDisk(key);
+        }
+        if (entry == null) {
+            return null;
+        }
+        mStaleHits++;
+        return entry.predictions;
+    }
+
+    public synchronized void put(String query, List<Prediction> predictions) {
+        String key = normalise(query);
+        Entry entry = new Entry(key, System.currentTimeMillis(),
+                Collections.unmodifiableList(new ArrayList<Prediction>(predictions)));
+
+        mMemory.put(key, entry);
+        writeToDisk(entry);
+    }
+
+    public synchronized int getMemoryHitCount() {
+        return mMemoryHits;
+    }
+
+    public synchronized int getDiskHitCount() {
+        return mDiskHits;
+    }
+
+    public synchronized int getMissCount() {
+        return mMisses;
+    }
+
+    public synchronized int getStaleHitCount() {
+        return mStaleHits;
+    }
+
+    /** Number of entries dropped from either tier to make room */
+    public synchronized int getEvictionCount() {
+        return mMemory.evictionCount() + mDiskEvictions;
+    }
+
+    /**
+     * Lower-cases the query and collapses whitespace, so "Dublin  Airport " and "dublin airport"
+     * share an entry.
+     */
+    static String normalise(String query) {
+        return query.trim().replaceAll("\\s+", " ").toLowerCase(Locale.US);
+    }
+
+    private File fileFor(String key) {
+        // The key is stored in the file too, so a hash collision reads as a miss
+        return new File(mDirectory, Integer.toHexString(key.hashCode()));
+    }
+
+    private Entry readFromDisk(String key) {
+        File file = fileFor(key);
+        if (!file.exists()) {
+            return null;
+        }
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != DISK_VERSION || !key.equals(in.readUTF())) {
+                return null;
+            }
+            long storedAt = in.readLong();
+            int count = in.readInt();
+            List<Prediction> predictions = new ArrayList<Prediction>(count);
+            for (int i=0; i < count; i++) {
+                predictions.add(new Prediction(in.readUTF(), in.readUTF()));
+            }
+            return new Entry(key, storedAt, Collections.unmodifiableList(predictions));
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to read cache entry: " + e.getMessage());
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    private void writeToDisk(Entry entry) {
+        if (!mDirectory.exists() && !mDirectory.mkdirs()) {
+            Log.e(TAG, "Failed to create cache directory " + mDirectory);
+            return;
+        }
+        ensureDiskBytes();
+
+        File file = fileFor(entry.key);
+        mDiskBytes -= file.length();
+
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+            out.writeInt(DISK_VERSION);
+            out.writeUTF(entry.key);
+            out.writeLong(entry.storedAt);
+            out.writeInt(entry.predictions.size());
+            for (Prediction prediction : entry.predictions) {
+                out.writeUTF(prediction.description);
+                out.writeUTF(prediction.reference);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to write cache entry: " + e.getMessage());
+            file.delete();
+        } finally {
+            closeQuietly(out);
+        }
+
+        mDiskBytes += file.length();
+        if (mDiskBytes > mMaxDiskBytes) {
+            trimDisk();
+        }
+    }
+
+    private void ensureDiskBytes() {
+        if (mDiskBytes != -1) {
+            return;
+        }
+        mDiskBytes = 0;
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                mDiskBytes += file.length();
+            }
+        }
+    }
+
+    /** Deletes the oldest files until the disk tier is back to three quarters of its limit */
+    private void trimDisk() {
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                long l = lhs.lastModified();
+                long r = rhs.lastModified();
+                return l < r ? -1 : (l == r ? 0 : 1);
+            }
+        });
+
+        long target = mMaxDiskBytes * 3 / 4;
+        for (File file : files) {
+            if (mDiskBytes <= target) {
+                break;
+            }
+            long length = file.length();
+            if (file.delete()) {
+                mDiskBytes -= length;
+                mDiskEvictions++;
+            }
+        }
+
+        if (BuildConfig.DEBUG) {
+            Log.d(TAG, "Trimmed disk cache to " + mDiskBytes + " bytes");
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // Nothing useful to do
+            }
+        }
+    }
+
+    private static class Entry {
+        final String key;
+        final long storedAt;
+        final List<Prediction> predictions;
+
+        Entry(String key, long storedAt, List<Prediction> predictions) {
+            this.key = key;
+            this.storedAt = storedAt;
+            this.predictions = predictions;
+        }
+
+        boolean isExpired(long now, long ttl) {
+            return now - storedAt > ttl;
+        }
+    }
+}
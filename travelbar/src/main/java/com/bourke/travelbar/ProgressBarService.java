@@ -1,58 +1,106 @@
 package com.bourke.travelbar;
 
-import android.animation.ObjectAnimator;
-import android.app.Notification;
-import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.app.Service;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
-import android.graphics.Color;
 import android.graphics.PixelFormat;
-import android.graphics.PorterDuff;
 import android.location.Location;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.IBinder;
-import android.support.v4.app.NotificationCompat;
+import android.os.Looper;
+import android.os.PowerManager;
+import android.os.Process;
 import android.util.Log;
 import android.view.Gravity;
 import android.view.WindowManager;
-import android.view.animation.LinearInterpolator;
-import android.widget.ProgressBar;
 import android.widget.Toast;
 
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.GooglePlayServicesClient;
+import com.google.android.gms.location.Geofence;
 import com.google.android.gms.location.LocationClient;
 import com.google.android.gms.location.LocationListener;
 import com.google.android.gms.location.LocationRequest;
+import com.google.android.gms.location.LocationStatusCodes;
+import com.squareup.otto.Produce;
 import com.squareup.otto.Subscribe;
 
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
 public class ProgressBarService extends Service implements
         GooglePlayServicesClient.ConnectionCallbacks,
         GooglePlayServicesClient.OnConnectionFailedListener,
-        LocationListener {
+        LocationListener,
+        LocationClient.OnAddGeofencesResultListener,
+        LocationClient.OnRemoveGeofencesResultListener {
 
     private static final String TAG = "TravelBar/ProgressBarService";
 
+    // Fixes dropped in a row before we stop trusting balanced power fixes
+    private static final int MAX_DROPPED_FIXES = 3;
+
+    // Percentage points the bar has to be out by before a fix corrects it
+    private static final float MIN_BAR_CORRECTION = 0.25f;
+
     private WindowManager windowManager;
-    private ProgressBar mProgressBar;
+    private ProgressOverlayView mProgressBar;
 
     private LocationClient mLocationClient;
     private LocationRequest mLocationRequest;
 
-    private Location mStartingPoint;
-    private Location mDestination;
+    // Fixes are received and worked through on this thread, along with everything else that
+    // touches the trip state below, and only the results go to the main thread
+    private HandlerThread mLocationThread;
+    private Handler mLocationHandler;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    private final TripProgressEngine mEngine = new TripProgressEngine();
+    private final SamplingPolicy mSamplingPolicy = new SamplingPolicy();
+    private final FixFilter mFixFilter = new FixFilter(Constants.MAX_FIX_ACCURACY);
+    private int mDroppedFixes = 0;
+
+    // Fixes held while the screen is off
+    private final FixBuffer mFixBuffer = new FixBuffer(Constants.SCREEN_OFF_BATCH_SIZE);
+    private boolean mScreenOn = true;
+
+    // Null once recording has failed
+    private TripRecorder mRecorder;
+
+    private TripNotifier mNotifier;
+
+    private BroadcastReceiver mScreenReceiver;
+
+    // Main thread only
+    private ArrivalEstimateEvent mArrivalEstimate = new ArrivalEstimateEvent(-1, -1);
 
-    private float mTotalDistance;
+    // Location thread's copy of the last estimate posted
+    private long mEstimatedTimeRemaining = -1;
 
-    private BroadcastReceiver mStopReceiver;
+    private PendingIntent mArrivalIntent;
+    private volatile boolean mArrived = false;
 
-    private double mRed = 0;
-    private double mGreen = 255;
-    private double mBlue = 0;
+    // Latest bar position, handed from the location thread to the main one by mUpdateBar
+    private volatile float mBarProgress;
+    private volatile float mBarRate;
+
+    // Location thread only. Fix time of the last bar update, and whether the whole percentage
+    // has changed since
+    private long mBarFixTime;
+    private boolean mProgressChanged = false;
+
+    private final Runnable mUpdateBar = new Runnable() {
+        @Override public void run() {
+            mProgressBar.setProgress(mBarProgress, mBarRate);
+        }
+    };
 
     public static boolean RUNNING = false;
 
@@ -66,6 +114,19 @@ public class ProgressBarService extends Service implements
     public static final String DESTINATION_LON =
             "com.bourke.travelbar.ProgressBarService.DESTINATION_LON";
 
+    // Optional route to the destination, as parallel arrays of latitudes and longitudes
+    public static final String ROUTE_LATS =
+            "com.bourke.travelbar.ProgressBarService.ROUTE_LATS";
+    public static final String ROUTE_LONS =
+            "com.bourke.travelbar.ProgressBarService.ROUTE_LONS";
+
+    public static final String ACTION_ARRIVED =
+            "com.bourke.travelbar.ProgressBarService.ARRIVED";
+
+    private static final String ARRIVAL_GEOFENCE_ID = "arrival";
+    private static final List<String> ARRIVAL_GEOFENCE_IDS =
+            Collections.singletonList(ARRIVAL_GEOFENCE_ID);
+
     public static final int NOTIFICATION_ID = 0;
 
     @Override public IBinder onBind(Intent intent) {
@@ -80,6 +141,13 @@ public class ProgressBarService extends Service implements
 
         BusProvider.getInstance().register(this);
 
+        mLocationThread = new HandlerThread(TAG, Process.THREAD_PRIORITY_BACKGROUND);
+        mLocationThread.start();
+        mLocationHandler = new Handler(mLocationThread.getLooper());
+
+        // Private to the app, it's a precise history of where the user's been
+        mRecorder = new TripRecorder(getFilesDir());
+
         mLocationClient = new LocationClient(this, this, this);
         mLocationClient.connect();
 
@@ -88,9 +156,7 @@ public class ProgressBarService extends Service implements
         mLocationRequest.setInterval(Constants.UPDATE_INTERVAL);
         mLocationRequest.setFastestInterval(Constants.FASTEST_INTERVAL);
 
-        mProgressBar = new ProgressBar(getBaseContext(), null,
-                android.R.attr.progressBarStyleHorizontal);
-        mProgressBar.getProgressDrawable().setColorFilter(Color.GREEN, PorterDuff.Mode.SRC_IN);
+        mProgressBar = new ProgressOverlayView(getBaseContext());
 
         final WindowManager.LayoutParams params = new WindowManager.LayoutParams(
                 WindowManager.LayoutParams.WRAP_CONTENT,
@@ -98,6 +164,8 @@ public class ProgressBarService extends Service implements
                 WindowManager.LayoutParams.TYPE_PHONE,
                 WindowManager.LayoutParams.FLAG_NOT_FOCUSABLE,
                 PixelFormat.TRANSLUCENT);
+        // Service windows don't get hardware acceleration unless they ask
+        params.flags |= WindowManager.LayoutParams.FLAG_HARDWARE_ACCELERATED;
         params.gravity = Gravity.TOP | Gravity.LEFT;
         params.width = WindowManager.LayoutParams.MATCH_PARENT;
         params.x = 0;
@@ -106,19 +174,49 @@ public class ProgressBarService extends Service implements
         windowManager = (WindowManager) getSystemService(WINDOW_SERVICE);
         windowManager.addView(mProgressBar, params);
 
-        showRunningNotification("Initialising " + getString(R.string.app_name));
+        // Only draw the bar, and do the work behind it, while someone can see it
+        PowerManager powerManager = (PowerManager) getSystemService(POWER_SERVICE);
+        setScreenOn(powerManager.isScreenOn());
+
+        mScreenReceiver = new BroadcastReceiver() {
+            @Override public void onReceive(Context context, Intent intent) {
+                setScreenOn(Intent.ACTION_SCREEN_ON.equals(intent.getAction()));
+            }
+        };
+        IntentFilter screenFilter = new IntentFilter(Intent.ACTION_SCREEN_ON);
+        screenFilter.addAction(Intent.ACTION_SCREEN_OFF);
+        registerReceiver(mScreenReceiver, screenFilter);
+
+        mArrivalIntent = PendingIntent.getService(this, 0,
+                new Intent(this, ProgressBarService.class).setAction(ACTION_ARRIVED),
+                PendingIntent.FLAG_UPDATE_CURRENT);
+
+        mNotifier = new TripNotifier(this);
+        mNotifier.showRunning("Initialising " + getString(R.string.app_name));
     }
 
     @Override public int onStartCommand(Intent intent, int flags, int startId) {
+        // Woken by the arrival geofence
+        if (intent != null && ACTION_ARRIVED.equals(intent.getAction())) {
+            final Intent geofenceIntent = intent;
+            mLocationHandler.post(new Runnable() {
+                @Override public void run() {
+                    if (!mEngine.hasDestination()) {
+                        // Left over from a trip that's no longer running
+                        stopSelf();
+                        return;
+                    }
+                    handleGeofenceTransition(geofenceIntent);
+                }
+            });
+            return START_STICKY;
+        }
+
         // Parse starting point
-        double startingLat = intent.getDoubleExtra(STARTING_LAT, -1);
-        double startingLon = intent.getDoubleExtra(STARTING_LON, -1);
+        final double startingLat = intent.getDoubleExtra(STARTING_LAT, -1);
+        final double startingLon = intent.getDoubleExtra(STARTING_LON, -1);
 
         if (startingLat != -1 || startingLon != -1) {
-            mStartingPoint = new Location(TAG);
-            mStartingPoint.setLatitude(startingLat);
-            mStartingPoint.setLongitude(startingLon);
-
             if (BuildConfig.DEBUG) {
                 Log.d(TAG, String.format("Received starting location: %f, %f", startingLat,
                         startingLon));
@@ -128,14 +226,10 @@ public class ProgressBarService extends Service implements
         }
 
         // Parse destination
-        double destinationLat = intent.getDoubleExtra(DESTINATION_LAT, -1);
-        double destinationLon = intent.getDoubleExtra(DESTINATION_LON, -1);
+        final double destinationLat = intent.getDoubleExtra(DESTINATION_LAT, -1);
+        final double destinationLon = intent.getDoubleExtra(DESTINATION_LON, -1);
 
         if (destinationLat != -1 && destinationLon != -1) {
-            mDestination = new Location(TAG);
-            mDestination.setLatitude(destinationLat);
-            mDestination.setLongitude(destinationLon);
-
             if (BuildConfig.DEBUG) {
                 Log.d(TAG, String.format("Received destination: %f, %f", destinationLat,
                         destinationLon));
@@ -144,7 +238,16 @@ public class ProgressBarService extends Service implements
             throw new IllegalStateException("Destination required to start ProgressBarService");
         }
 
-        mTotalDistance = mStartingPoint.distanceTo(mDestination);
+        // Route, if we have one
+        final double[] routeLats = intent.getDoubleArrayExtra(ROUTE_LATS);
+        final double[] routeLons = intent.getDoubleArrayExtra(ROUTE_LONS);
+
+        mLocationHandler.post(new Runnable() {
+            @Override public void run() {
+                startTrip(startingLat, startingLon, destinationLat, destinationLon, routeLats,
+                        routeLons);
+            }
+        });
 
         // We want this service to continue running until it is explicitly
         // stopped, so return sticky.
@@ -154,36 +257,64 @@ public class ProgressBarService extends Service implements
     @Override public void onDestroy() {
         super.onDestroy();
 
+        // Let any fix or queued work on the location thread finish first, so nothing there
+        // touches the client after it's disconnected, or the notification after we clear it
+        mLocationThread.quit();
+        try {
+            mLocationThread.join();
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+        mMainHandler.removeCallbacks(mUpdateBar);
+
         if (mLocationClient.isConnected()) {
             mLocationClient.removeLocationUpdates(this);
+            mLocationClient.removeGeofences(ARRIVAL_GEOFENCE_IDS, this);
         }
 
+        // Stops the geofence waking us again should the removal not get through
+        mArrivalIntent.cancel();
+
         // Disconnecting the client invalidates it.
         mLocationClient.disconnect();
 
+        if (mRecorder != null) {
+            try {
+                mRecorder.close();
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to close trip log: " + e.getMessage());
+            }
+        }
+
+        if (mScreenReceiver != null) {
+            unregisterReceiver(mScreenReceiver);
+        }
+
         if (mProgressBar != null) {
             windowManager.removeView(mProgressBar);
         }
 
-        if (mStopReceiver != null) {
-            try {
-                unregisterReceiver(mStopReceiver);
-            } catch (IllegalArgumentException e) {
-                // http://stackoverflow.com/a/3568906/663370
-            }
+        if (mNotifier != null) {
+            mNotifier.release();
         }
 
-        // Clear any notifications we've shown
-        NotificationManager mNotificationManager =
-                (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
-        mNotificationManager.cancelAll();
+        // Otto won't take a second producer for the arrival estimate
+        BusProvider.getInstance().unregister(this);
 
         RUNNING = false;
     }
 
     @Override public void onConnected(Bundle bundle) {
-        // TODO: they recommend wrapping a boolean here to disable updates if user requests
-        mLocationClient.requestLocationUpdates(mLocationRequest, this);
+        mLocationHandler.post(new Runnable() {
+            @Override public void run() {
+                // TODO: they recommend wrapping a boolean here to disable updates if user requests
+                requestLocationUpdates();
+
+                if (mEngine.hasDestination()) {
+                    addArrivalGeofence();
+                }
+            }
+        });
     }
 
     @Override public void onDisconnected() {
@@ -194,123 +325,400 @@ public class ProgressBarService extends Service implements
         Toast.makeText(this, "Connection Failure", Toast.LENGTH_SHORT).show();
     }
 
+    /**
+     * Called on the location thread.
+     */
     @Override public void onLocationChanged(Location location) {
-        updateProgress(location);
+        if (mArrived) {
+            // Already on its way when updates were removed
+            return;
+        }
+
+        double lat = location.getLatitude();
+        double lon = location.getLongitude();
+        float accuracy = location.hasAccuracy() ? location.getAccuracy() : 0;
+
+        if (mRecorder != null) {
+            try {
+                mRecorder.recordFix(location.getTime(), lat, lon, accuracy,
+                        location.hasSpeed() ? location.getSpeed() : Float.NaN);
+            } catch (IOException e) {
+                stopRecording(e);
+            }
+        }
+
+        if (!mScreenOn) {
+            // Nobody's looking, hold on to the fix unless we're close enough for the approach
+            // or arrival to matter
+            mFixBuffer.add(lat, lon, accuracy, location.getTime());
+            if (mFixBuffer.isFull() || GeoMath.distanceBetween(lat, lon,
+                    mEngine.getDestinationLat(), mEngine.getDestinationLon())
+                    <= Constants.APPROACH_DISTANCE) {
+                drainFixBuffer();
+                if (mEngine.isArrived()) {
+                    onArrived();
+                    return;
+                }
+                updateSamplingPolicy((float) mEngine.getClosingSpeed());
+            }
+            return;
+        }
+
+        if (!processFix(lat, lon, accuracy, location.getTime())) {
+            return;
+        }
+
+        // Network fixes don't carry a speed, fall back to how fast we're closing in
+        publishProgress(location.hasSpeed()
+                ? location.getSpeed() : (float) mEngine.getClosingSpeed());
     }
 
-    @Subscribe public void destinationChanged(DestinationChangedEvent event) {
+    @Subscribe public void destinationChanged(final DestinationChangedEvent event) {
         if (BuildConfig.DEBUG) {
             Log.d(TAG, String.format("Destination changed to: %f,%f", event.lat, event.lon));
         }
 
-        mDestination.setLatitude(event.lat);
-        mDestination.setLongitude(event.lon);
+        mLocationHandler.post(new Runnable() {
+            @Override public void run() {
+                mEngine.setDestination(event.lat, event.lon);
+                updateFixAccuracy();
 
-        mTotalDistance = mStartingPoint.distanceTo(mDestination);
+                // Re-adding under the same id moves the existing geofence
+                if (mLocationClient.isConnected() && !mArrived) {
+                    addArrivalGeofence();
+                }
+            }
+        });
     }
 
-    private void updateProgress(Location currentLocation) {
-        mTotalDistance = mStartingPoint.distanceTo(mDestination);
+    @Produce public ArrivalEstimateEvent produceArrivalEstimate() {
+        return mArrivalEstimate;
+    }
 
-        float distanceRemaining = currentLocation.distanceTo(mDestination);
+    @Override public void onAddGeofencesResult(int statusCode, String[] geofenceRequestIds) {
+        final boolean added = statusCode == LocationStatusCodes.SUCCESS;
 
-        int progressStatus = (int) ((distanceRemaining / mTotalDistance) * 100);
-        progressStatus = Math.abs(progressStatus - 100);
+        mLocationHandler.post(new Runnable() {
+            @Override public void run() {
+                // Without the geofence, arrival falls back to checking the distance on each fix
+                mSamplingPolicy.setGeofenced(added);
+            }
+        });
 
-        // Set a min > 0 to make the bar more visible when empty
-        if (progressStatus <= 3) {
-            progressStatus = 3;
+        if (BuildConfig.DEBUG) {
+            Log.d(TAG, "Add geofences " + Arrays.toString(geofenceRequestIds) + ": "
+                    + statusCode);
         }
+    }
 
-        // Update the progress bar smoothly using ObjectAnimator
-        ObjectAnimator animation = ObjectAnimator.ofInt(mProgressBar, "progress", progressStatus);
-        animation.setDuration(500); // 0.5 second
-        animation.setInterpolator(new LinearInterpolator());
-        animation.start();
+    @Override public void onRemoveGeofencesByRequestIdsResult(int statusCode,
+            String[] geofenceRequestIds) {
+        if (mArrived) {
+            // Held off disconnecting until the geofence was gone
+            mLocationClient.disconnect();
+        }
+    }
+
+    @Override public void onRemoveGeofencesByPendingIntentResult(int statusCode,
+            PendingIntent pendingIntent) {
+        // Not used
+    }
 
-        // Update the ongoing notification
-        showRunningNotification(progressStatus + "% journey completed");
+    /**
+     * Filters a fix and, if it's kept, moves the trip on.
+     *
+     * @return false if the fix was dropped
+     */
+    private boolean processFix(double lat, double lon, float accuracy, long time) {
+        if (!mFixFilter.accept(lat, lon, accuracy, time)) {
+            if (BuildConfig.DEBUG) {
+                Log.d(TAG, "Dropped fix with accuracy (metres): " + accuracy);
+            }
 
-        mRed = Math.min(255.0 * 2 * progressStatus / 100, 255);
-        if (mRed == 255) {
-            mGreen = Math.abs(255 - (255.0 / progressStatus) * 100);
+            // Nothing else would move the request back to GPS if no fix gets through
+            if (++mDroppedFixes >= MAX_DROPPED_FIXES && !mSamplingPolicy.isHighAccuracy()) {
+                mSamplingPolicy.setNeedsGps(true);
+                updateSamplingPolicy((float) mEngine.getClosingSpeed());
+            }
+            return false;
         }
-        mProgressBar.getProgressDrawable()
-                .setColorFilter(Color.rgb((int) mRed, (int) mGreen, (int) mBlue),
-                        PorterDuff.Mode.SRC_IN);
+        mDroppedFixes = 0;
 
-        if (progressStatus >= 90) {
-            showArrivalNotification();
-            mLocationClient.disconnect();
+        mProgressChanged |= mEngine.update(mFixFilter.getLat(), mFixFilter.getLon(),
+                mFixFilter.getTime());
+
+        if (mRecorder != null) {
+            try {
+                mRecorder.recordProgress(time, mEngine.getProgress(), mEngine.getExactProgress(),
+                        mEngine.getDistanceRemaining(), (float) mEngine.getClosingSpeed());
+            } catch (IOException e) {
+                stopRecording(e);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gives up on the trip log for the rest of this service's life.
+     */
+    private void stopRecording(IOException cause) {
+        Log.e(TAG, "Stopped recording trip: " + cause.getMessage());
+        try {
+            mRecorder.close();
+        } catch (IOException e) {
+            // Already failing
+        }
+        mRecorder = null;
+    }
+
+    /**
+     * Works through the fixes held while the screen was off, oldest first.
+     */
+    private void drainFixBuffer() {
+        int size = mFixBuffer.size();
+        for (int i=0; i < size; i++) {
+            processFix(mFixBuffer.getLat(i), mFixBuffer.getLon(i), mFixBuffer.getAccuracy(i),
+                    mFixBuffer.getTime(i));
+        }
+        mFixBuffer.clear();
+
+        if (BuildConfig.DEBUG && size > 0) {
+            Log.d(TAG, "Processed " + size + " held fixes");
+        }
+    }
+
+    /**
+     * Called on the main thread. The location thread catches up with the held fixes and
+     * redraws once when the screen comes back on.
+     */
+    private void setScreenOn(final boolean screenOn) {
+        mProgressBar.setScreenOn(screenOn);
+
+        mLocationHandler.post(new Runnable() {
+            @Override public void run() {
+                mScreenOn = screenOn;
+                mSamplingPolicy.setScreenOn(screenOn);
+
+                if (!screenOn && mRecorder != null) {
+                    // The process is more likely to be killed from here on
+                    try {
+                        mRecorder.flush();
+                    } catch (IOException e) {
+                        stopRecording(e);
+                    }
+                }
+
+                // The arrival notification stays, and there are no more updates to change
+                if (mArrived) {
+                    return;
+                }
+
+                if (screenOn) {
+                    drainFixBuffer();
+                }
+                if (!mEngine.hasFix()) {
+                    return;
+                }
+
+                if (screenOn) {
+                    publishProgress((float) mEngine.getClosingSpeed());
+                } else {
+                    updateSamplingPolicy((float) mEngine.getClosingSpeed());
+                }
+            }
+        });
+    }
+
+    /**
+     * Passes the state of the trip on to the location request, bar, notification and bus.
+     *
+     * @param speed metres/second, or NaN if unknown
+     */
+    private void publishProgress(float speed) {
+        int progressStatus = mEngine.getProgress();
+
+        updateSamplingPolicy(speed);
+
+        // The bar carries on at the last rate between fixes and redraws itself as it moves, so
+        // it's only corrected when the percentage changes or it's drifted from the fix
+        float exactProgress = mEngine.getExactProgress();
+        long elapsed = Math.min(mEngine.getFixTime() - mBarFixTime, Constants.MAX_UPDATE_INTERVAL);
+        float predicted = Math.min(mBarProgress + mBarRate * elapsed / 1000, 100);
+        if (mProgressChanged || Math.abs(exactProgress - predicted) >= MIN_BAR_CORRECTION) {
+            mProgressChanged = false;
+            mBarFixTime = mEngine.getFixTime();
+            mBarRate = mEngine.getProgressRate();
+            mBarProgress = exactProgress;
+            mMainHandler.removeCallbacks(mUpdateBar);
+            mMainHandler.post(mUpdateBar);
+        }
+
+        long timeRemaining = mEngine.getTimeRemaining();
+        updateArrivalEstimate(timeRemaining);
+
+        // Update the ongoing notification, which skips it if too soon or unchanged
+        mNotifier.showProgress(progressStatus, timeRemaining);
+
+        if (mEngine.isArrived()) {
+            onArrived();
         }
 
         if (BuildConfig.DEBUG) {
-            Log.d(TAG, "Start: " + mStartingPoint);
-            Log.d(TAG, "Destination: " + mDestination);
-            Log.d(TAG, "Total distance (metres): " + mTotalDistance);
-            Log.d(TAG, "Distance remaining (meters): " + distanceRemaining);
+            Log.d(TAG, "Trip: " + mEngine);
+            Log.d(TAG, "Total distance (metres): " + mEngine.getTotalDistance());
+            Log.d(TAG, "Distance remaining (meters): " + mEngine.getDistanceRemaining());
+            if (mEngine.getRoute() != null) {
+                Log.d(TAG, "Off route (metres): " + mEngine.getRoute().getOffRouteDistance());
+            }
             Log.d(TAG, "Distance complete (percentage): " + progressStatus);
         }
     }
 
-    private PendingIntent getStopServicePendingIntent() {
-        PendingIntent stopIntent = PendingIntent.getBroadcast(this, 0,
-                new Intent("com.bourke.ProgressBarService.STOP_SERVICE"),
-                PendingIntent.FLAG_UPDATE_CURRENT);
+    /**
+     * Re-runs the sampling policy, replacing the location request if that changes it.
+     *
+     * @param speed metres/second, or NaN if unknown
+     */
+    private void updateSamplingPolicy(float speed) {
+        if (mSamplingPolicy.update(mEngine.getDistanceRemaining(), mEngine.getTotalDistance(),
+                speed)) {
+            updateLocationRequest();
+        }
+    }
 
-        mStopReceiver = new BroadcastReceiver() {
-            @Override public void onReceive(Context context, Intent intent) {
-                unregisterReceiver(this);
-                stopSelf();
+    private void startTrip(double startingLat, double startingLon, double destinationLat,
+            double destinationLon, double[] routeLats, double[] routeLons) {
+        mEngine.setStart(startingLat, startingLon);
+        mEngine.setDestination(destinationLat, destinationLon);
+
+        if (routeLats != null && routeLons != null) {
+            try {
+                mEngine.setRoute(new RoutePolyline(routeLats, routeLons));
+
+                if (BuildConfig.DEBUG) {
+                    Log.d(TAG, "Received route of " + routeLats.length + " points");
+                }
+            } catch (IllegalArgumentException e) {
+                // Carry on as the crow flies
+                Log.e(TAG, "Ignoring route: " + e.getMessage());
             }
-        };
-        registerReceiver(mStopReceiver,
-                new IntentFilter("com.bourke.ProgressBarService.STOP_SERVICE"));
+        }
+
+        updateFixAccuracy();
+
+        if (mLocationClient.isConnected()) {
+            addArrivalGeofence();
+        }
+    }
+
+    private void requestLocationUpdates() {
+        // Replaces any existing request for this listener
+        mLocationClient.requestLocationUpdates(mLocationRequest, this,
+                mLocationThread.getLooper());
+    }
+
+    private void addArrivalGeofence() {
+        if (mEngine.getTotalDistance() <= 0) {
+            // Already there, the first fix will tell us
+            return;
+        }
+
+        Geofence geofence = new Geofence.Builder()
+                .setRequestId(ARRIVAL_GEOFENCE_ID)
+                .setCircularRegion(mEngine.getDestinationLat(), mEngine.getDestinationLon(),
+                        mEngine.getArrivalRadius())
+                .setTransitionTypes(Geofence.GEOFENCE_TRANSITION_ENTER)
+                .setExpirationDuration(Constants.GEOFENCE_EXPIRATION)
+                .build();
+
+        mLocationClient.addGeofences(Collections.singletonList(geofence), mArrivalIntent, this);
+    }
 
-        return stopIntent;
+    private void handleGeofenceTransition(Intent intent) {
+        if (LocationClient.hasError(intent)) {
+            Log.e(TAG, "Geofence error: " + LocationClient.getErrorCode(intent));
+            return;
+        }
+
+        if (LocationClient.getGeofenceTransition(intent) == Geofence.GEOFENCE_TRANSITION_ENTER) {
+            onArrived();
+        }
     }
 
-    private void showRunningNotification(String titleText) {
-        PendingIntent peStopService = getStopServicePendingIntent();
-
-        PendingIntent peMapsActivity = PendingIntent.getActivity(this, 0,
-                new Intent(this, MapsActivity.class), 0);
-
-        NotificationCompat.Builder builder =
-                new NotificationCompat.Builder(this)
-                        .setSmallIcon(R.drawable.ic_notify)
-                        .setContentTitle(titleText)
-                        .setAutoCancel(false)
-                        .setOngoing(true)
-                        .addAction(R.drawable.ic_action_stop_light,
-                                getString(R.string.stop_tracking), peStopService)
-                        .setContentIntent(peMapsActivity);
-
-        NotificationManager mNotificationManager =
-                (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
-        mNotificationManager.notify(NOTIFICATION_ID, builder.build());
+    private void onArrived() {
+        if (mArrived) {
+            return;
+        }
+        mArrived = true;
+
+        mNotifier.showArrival();
+
+        if (mLocationClient.isConnected()) {
+            mLocationClient.removeLocationUpdates(this);
+            // Disconnects once the geofence is removed
+            mLocationClient.removeGeofences(ARRIVAL_GEOFENCE_IDS, this);
+        }
     }
 
-    private void showArrivalNotification() {
-        PendingIntent peStopService = getStopServicePendingIntent();
-
-        PendingIntent peMapsActivity = PendingIntent.getActivity(this, 0,
-                new Intent(this, MapsActivity.class), 0);
-
-        NotificationCompat.Builder builder =
-                new NotificationCompat.Builder(this)
-                        .setSmallIcon(R.drawable.ic_notify)
-                        .setTicker("Yeehaw!")
-                        .setContentTitle("You are arriving at your destination!")
-                        .setAutoCancel(true)
-                        .setVibrate(new long[]{2000, 2000})
-                        .setDefaults(Notification.DEFAULT_ALL)
-                        .addAction(R.drawable.ic_action_stop_light,
-                                getString(R.string.stop_tracking), peStopService)
-                        .setContentIntent(peMapsActivity);
-
-        NotificationManager mNotificationManager =
-                (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
-        mNotificationManager.notify(NOTIFICATION_ID, builder.build());
+    /**
+     * Posts a new arrival estimate to the bus when it moves by a minute or more, or becomes
+     * known or unknown.
+     */
+    private void updateArrivalEstimate(long timeRemaining) {
+        long last = mEstimatedTimeRemaining;
+        boolean changed = (timeRemaining < 0) != (last < 0)
+                || Math.abs(timeRemaining - last) >= 60000;
+        if (!changed) {
+            return;
+        }
+        mEstimatedTimeRemaining = timeRemaining;
+
+        long arrivalTime = timeRemaining < 0 ? -1 : System.currentTimeMillis() + timeRemaining;
+        final ArrivalEstimateEvent event = new ArrivalEstimateEvent(timeRemaining, arrivalTime);
+
+        // The bus is main thread only
+        mMainHandler.post(new Runnable() {
+            @Override public void run() {
+                mArrivalEstimate = event;
+                BusProvider.getInstance().post(event);
+            }
+        });
+
+        if (BuildConfig.DEBUG) {
+            Log.d(TAG, "Arrival estimate: " + event);
+        }
+    }
+
+    /**
+     * Lets through fixes accurate enough to place us within a percentage step, or
+     * {@link Constants#MAX_FIX_ACCURACY} if that's looser, so balanced power fixes still count
+     * on long trips.
+     */
+    private void updateFixAccuracy() {
+        mFixFilter.setMaxAccuracy(Math.max(Constants.MAX_FIX_ACCURACY,
+                (float) (mEngine.getTotalDistance() / 100)));
+
+        // A new gate gets another chance at balanced power
+        mDroppedFixes = 0;
+        mSamplingPolicy.setNeedsGps(false);
+    }
+
+    /**
+     * Re-requests location updates with the interval and priority from the sampling policy.
+     */
+    private void updateLocationRequest() {
+        mLocationRequest.setInterval(mSamplingPolicy.getInterval());
+        mLocationRequest.setPriority(mSamplingPolicy.isHighAccuracy()
+                ? LocationRequest.PRIORITY_HIGH_ACCURACY
+                : LocationRequest.PRIORITY_BALANCED_POWER_ACCURACY);
+
+        if (mLocationClient.isConnected()) {
+            requestLocationUpdates();
+        }
+
+        if (BuildConfig.DEBUG) {
+            Log.d(TAG, String.format("Sampling every %dms, high accuracy: %b",
+                    mSamplingPolicy.getInterval(), mSamplingPolicy.isHighAccuracy()));
+        }
     }
-}
\ No newline at end of file
+}
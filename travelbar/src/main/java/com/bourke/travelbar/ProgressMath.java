@@ -0,0 +1,68 @@
+package com.bourke.travelbar;
+
+/**
+ * The progress and colour calculations behind the bar, free of Android types so they can be
+ * exercised on a plain JVM.
+ */
+public final class ProgressMath {
+
+    // Smallest progress shown, makes the bar more visible when empty
+    public static final int MIN_PROGRESS = 3;
+
+    // Bar colour for each percentage, worked out once
+    private static final int[] COLOURS = new int[101];
+
+    static {
+        for (int i=0; i < COLOURS.length; i++) {
+            COLOURS[i] = computeColour(i);
+        }
+    }
+
+    private ProgressMath() {
+        // No instances.
+    }
+
+    /**
+     * Percentage of the journey completed, given the distance left and the total distance.
+     */
+    public static int progress(double distanceRemaining, double totalDistance) {
+        int progressStatus = (int) ((distanceRemaining / totalDistance) * 100);
+        progressStatus = Math.abs(progressStatus - 100);
+
+        if (progressStatus <= MIN_PROGRESS) {
+            progressStatus = MIN_PROGRESS;
+        }
+        return progressStatus;
+    }
+
+    /**
+     * Unrounded percentage of the journey completed, between {@link #MIN_PROGRESS} and 100, for
+     * drawing the bar smoothly.
+     */
+    public static float exactProgress(double distanceRemaining, double totalDistance) {
+        if (totalDistance <= 0) {
+            return MIN_PROGRESS;
+        }
+
+        float progress = (float) (100 - (distanceRemaining / totalDistance) * 100);
+        return Math.max(MIN_PROGRESS, Math.min(100, progress));
+    }
+
+    /**
+     * Colour of the bar for a given progress, as an opaque ARGB int. Goes from green through
+     * yellow at the half way point to red on arrival. A table lookup, progress outside 0 to 100
+     * gets the colour at the nearest end.
+     */
+    public static int colour(int progressStatus) {
+        return COLOURS[Math.max(0, Math.min(100, progressStatus))];
+    }
+
+    private static int computeColour(int progressStatus) {
+        int red = (int) Math.min(255.0 * 2 * progressStatus / 100, 255);
+        int green = 255;
+        if (red == 255) {
+            green = (int) Math.abs(255 - (255.0 / progressStatus) * 100);
+        }
+        return 0xFF000000 | (red << 16) | (green << 8);
+    }
+}
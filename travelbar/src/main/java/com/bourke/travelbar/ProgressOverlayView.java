@@ -0,0 +1,159 @@
+package com.bourke.travelbar;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.support.v4.view.ViewCompat;
+import android.view.View;
+import android.view.animation.AnimationUtils;
+
+/**
+ * The bar drawn over other apps by {@link ProgressBarService}. Draws a single rectangle,
+ * coloured from {@link ProgressMath#colour(int)}'s lookup table. The window is hardware
+ * accelerated. The view has no layer of its own, which would be re-rendered every time the bar
+ * moves anyway.
+ *
+ * Between fixes the bar carries on at the rate we were last making progress, checked once per
+ * display frame and only redrawn when it moves by a pixel. When a fix arrives any difference
+ * between where the bar is and where the fix puts it is eased out over
+ * {@link #CORRECTION_DURATION}, rather than jumping. Frames are only asked for while the screen
+ * is on and the bar has somewhere to go.
+ */
+public class ProgressOverlayView extends View {
+
+    // Height of the bar in density independent pixels
+    private static final int BAR_HEIGHT_DP = 4;
+
+    // How long the bar takes to ease into a new fix in milliseconds
+    private static final long CORRECTION_DURATION = 500;
+
+    // Longest we'll carry on without a fix in milliseconds, in case we've actually stopped
+    private static final long MAX_PREDICTION = Constants.MAX_UPDATE_INTERVAL;
+
+    private final Paint mPaint = new Paint();
+    private final int mBarHeight;
+
+    // Progress at the last fix, how fast it was changing and when it arrived
+    private float mFixProgress = 0;
+    private float mProgressRate = 0;
+    private long mFixTime;
+
+    // Where the bar was drawn relative to the last fix when it arrived, eased to nothing
+    private float mCorrection = 0;
+
+    private float mDrawnProgress = 0;
+    private int mDrawnRight = -1;
+
+    private boolean mScreenOn = true;
+    private boolean mFrameScheduled = false;
+
+    private final Runnable mFrameCallback = new Runnable() {
+        @Override public void run() {
+            onFrame();
+        }
+    };
+
+    public ProgressOverlayView(Context context) {
+        super(context);
+
+        mBarHeight = (int) (BAR_HEIGHT_DP * context.getResources().getDisplayMetrics().density
+                + 0.5f);
+
+        mPaint.setStyle(Paint.Style.FILL);
+        mPaint.setColor(ProgressMath.colour(0));
+    }
+
+    /**
+     * Takes the progress from a new fix.
+     *
+     * @param progressRate percentage points per second we're making, 0 to stand still
+     */
+    public void setProgress(float progress, float progressRate) {
+        long now = AnimationUtils.currentAnimationTimeMillis();
+        float drawn = predict(now);
+
+        mFixProgress = progress;
+        mProgressRate = Math.max(0, progressRate);
+        mFixTime = now;
+        mCorrection = drawn - progress;
+
+        scheduleFrame();
+    }
+
+    /**
+     * Stops asking for frames while the screen is off, and catches up when it comes back on.
+     */
+    public void setScreenOn(boolean screenOn) {
+        mScreenOn = screenOn;
+        if (screenOn) {
+            scheduleFrame();
+        }
+    }
+
+    /**
+     * Runs once per display frame while the bar is moving.
+     */
+    private void onFrame() {
+        mFrameScheduled = false;
+
+        long now = AnimationUtils.currentAnimationTimeMillis();
+        mDrawnProgress = predict(now);
+
+        // Sub-pixel movement isn't worth a redraw
+        int right = (int) (getWidth() * mDrawnProgress / 100);
+        if (right != mDrawnRight) {
+            mDrawnRight = right;
+            invalidate();
+        }
+
+        if (isMoving(now)) {
+            scheduleFrame();
+        }
+    }
+
+    @Override protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        setMeasuredDimension(getDefaultSize(getSuggestedMinimumWidth(), widthMeasureSpec),
+                mBarHeight);
+    }
+
+    @Override protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        mDrawnRight = (int) (w * mDrawnProgress / 100);
+    }
+
+    @Override protected void onDraw(Canvas canvas) {
+        mPaint.setColor(ProgressMath.colour((int) mDrawnProgress));
+        canvas.drawRect(0, 0, mDrawnRight, getHeight(), mPaint);
+    }
+
+    @Override protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        removeCallbacks(mFrameCallback);
+        mFrameScheduled = false;
+    }
+
+    private float predict(long now) {
+        long elapsed = Math.min(now - mFixTime, MAX_PREDICTION);
+
+        float progress = mFixProgress + mProgressRate * elapsed / 1000;
+        if (elapsed < CORRECTION_DURATION) {
+            progress += mCorrection * (1 - (float) elapsed / CORRECTION_DURATION);
+        }
+        return Math.min(progress, 100);
+    }
+
+    private boolean isMoving(long now) {
+        long elapsed = now - mFixTime;
+        if (elapsed < CORRECTION_DURATION && mCorrection != 0) {
+            return true;
+        }
+        return mProgressRate > 0 && elapsed < MAX_PREDICTION && mDrawnProgress < 100;
+    }
+
+    private void scheduleFrame() {
+        if (mScreenOn && !mFrameScheduled) {
+            mFrameScheduled = true;
+            ViewCompat.postOnAnimation(this, mFrameCallback);
+        }
+    }
+}
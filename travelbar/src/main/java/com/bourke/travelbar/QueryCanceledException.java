@@ -0,0 +1,12 @@
+package com.bourke.travelbar;
+
+/**
+ * Thrown when a query is given up on through its {@link QueryCancellation}. The provider turns
+ * it into the framework's {@link android.os.OperationCanceledException} on the way out.
+ */
+public class QueryCanceledException extends RuntimeException {
+
+    public QueryCanceledException() {
+        super("Query cancelled");
+    }
+}
@@ -0,0 +1,74 @@
+package com.bourke.travelbar;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.CancellationSignal;
+
+/**
+ * Lets a query be given up on part way through. Stands in for {@link CancellationSignal}, which
+ * only exists from API 16, so the query path still loads on older releases. On those there is
+ * simply never a cancellation.
+ */
+public class QueryCancellation {
+
+    private volatile boolean mCanceled = false;
+    private Runnable mOnCancel;
+
+    /**
+     * Follows a framework signal, or returns null if there isn't one.
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    public static QueryCancellation from(CancellationSignal signal) {
+        if (signal == null) {
+            return null;
+        }
+
+        final QueryCancellation cancellation = new QueryCancellation();
+        signal.setOnCancelListener(new CancellationSignal.OnCancelListener() {
+            @Override
+            public void onCancel() {
+                cancellation.cancel();
+            }
+        });
+        return cancellation;
+    }
+
+    public void cancel() {
+        Runnable onCancel;
+        synchronized (this) {
+            if (mCanceled) {
+                return;
+            }
+            mCanceled = true;
+            onCancel = mOnCancel;
+        }
+
+        if (onCancel != null) {
+            onCancel.run();
+        }
+    }
+
+    public boolean isCanceled() {
+        return mCanceled;
+    }
+
+    public void throwIfCanceled() {
+        if (mCanceled) {
+            throw new QueryCanceledException();
+        }
+    }
+
+    /**
+     * Sets what to run on cancellation, run straight away if we're already cancelled. Null
+     * clears it.
+     */
+    public void setOnCancelListener(Runnable onCancel) {
+        synchronized (this) {
+            mOnCancel = onCancel;
+            if (!mCanceled || onCancel == null) {
+                return;
+            }
+        }
+        onCancel.run();
+    }
+}
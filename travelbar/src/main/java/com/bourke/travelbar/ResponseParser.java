@@ -0,0 +1,13 @@
+package com.bourke.travelbar;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Turns a response body into a result while it is being read, so the body never needs to be
+ * held in memory as a whole.
+ */
+public interface ResponseParser<T> {
+
+    T parse(InputStream in) throws IOException;
+}
@@ -0,0 +1,146 @@
+package com.bourke.travelbar;
+
+/**
+ * A route as parallel arrays of lat/lon points, with the distance along the route to each point
+ * worked out up front so fixes can be turned into along-route progress.
+ *
+ * Each fix is matched to the nearest segment within a window starting just behind the segment
+ * the last fix matched, and running on until a few segments past the best match so far. The
+ * cost per fix follows how far we've moved, not the length of the route. The whole route is
+ * only scanned for the first fix, or once several fixes in a row have been more than
+ * {@link #OFF_ROUTE_DISTANCE} from it, so a single wild fix doesn't cost a full scan. Not
+ * thread safe, and nothing is allocated per fix.
+ */
+public class RoutePolyline {
+
+    // Segments behind the last match, and past the best match so far, to search
+    private static final int WINDOW_BEHIND = 2;
+    private static final int WINDOW_AHEAD = 16;
+
+    // Metres off the windowed match before we look for a better one along the whole route
+    private static final double OFF_ROUTE_DISTANCE = 100;
+
+    // Fixes in a row that have to be off route before we look along the whole route
+    private static final int OFF_ROUTE_FIXES = 3;
+
+    private static final double METRES_PER_DEGREE = GeoMath.EARTH_RADIUS * Math.PI / 180;
+
+    private final double[] mLats;
+    private final double[] mLons;
+
+    // Distance along the route to each point, in metres
+    private final double[] mCumulative;
+
+    private int mSegment = -1;
+    private double mDistanceAlong;
+    private double mOffRouteDistance;
+    private int mOffRouteFixes = 0;
+
+    public RoutePolyline(double[] lats, double[] lons) {
+        if (lats.length != lons.length || lats.length < 2) {
+            throw new IllegalArgumentException("A route needs at least two lat/lon points");
+        }
+
+        mLats = lats;
+        mLons = lons;
+
+        mCumulative = new double[lats.length];
+        for (int i=1; i < lats.length; i++) {
+            mCumulative[i] = mCumulative[i - 1]
+                    + GeoMath.distanceBetween(lats[i - 1], lons[i - 1], lats[i], lons[i]);
+        }
+    }
+
+    /**
+     * Matches a fix to the route, updating {@link #getDistanceAlong()} and
+     * {@link #getOffRouteDistance()}.
+     */
+    public void project(double lat, double lon) {
+        // Flatten the earth around the fix, good enough over a few segments
+        double lonScale = Math.cos(Math.toRadians(lat));
+        int lastSegment = mLats.length - 2;
+
+        if (mSegment >= 0) {
+            nearest(lat, lon, lonScale, Math.max(0, mSegment - WINDOW_BEHIND), mSegment);
+            if (mOffRouteDistance <= OFF_ROUTE_DISTANCE) {
+                mOffRouteFixes = 0;
+                return;
+            }
+            if (++mOffRouteFixes < OFF_ROUTE_FIXES) {
+                return;
+            }
+        }
+
+        nearest(lat, lon, lonScale, 0, lastSegment);
+        mOffRouteFixes = 0;
+    }
+
+    /** Length of the whole route in metres */
+    public double getLength() {
+        return mCumulative[mCumulative.length - 1];
+    }
+
+    /** Metres along the route to the last matched fix */
+    public double getDistanceAlong() {
+        return mDistanceAlong;
+    }
+
+    /** Metres along the route from the last matched fix to its end */
+    public double getDistanceRemaining() {
+        return getLength() - mDistanceAlong;
+    }
+
+    /** Metres between the last fix and the point it was matched to on the route */
+    public double getOffRouteDistance() {
+        return mOffRouteDistance;
+    }
+
+    /** Index of the segment, from point i to i + 1, the last fix was matched to */
+    public int getSegment() {
+        return mSegment;
+    }
+
+    public int size() {
+        return mLats.length;
+    }
+
+    /**
+     * Finds the nearest segment from {@code from}, searching at least as far as {@code to} and
+     * then for as long as matches keep improving.
+     */
+    private void nearest(double lat, double lon, double lonScale, int from, int to) {
+        double bestDistance = Double.MAX_VALUE;
+        int bestSegment = from;
+        double bestFraction = 0;
+
+        int lastSegment = mLats.length - 2;
+        for (int i=from; i <= lastSegment && (i <= to || i - bestSegment <= WINDOW_AHEAD); i++) {
+            // Segment and fix relative to the segment start, in scaled degrees
+            double segX = (mLons[i + 1] - mLons[i]) * lonScale;
+            double segY = mLats[i + 1] - mLats[i];
+            double x = (lon - mLons[i]) * lonScale;
+            double y = lat - mLats[i];
+
+            double lengthSquared = segX * segX + segY * segY;
+            double fraction = 0;
+            if (lengthSquared > 0) {
+                fraction = (x * segX + y * segY) / lengthSquared;
+                fraction = Math.max(0, Math.min(1, fraction));
+            }
+
+            double dx = x - fraction * segX;
+            double dy = y - fraction * segY;
+            double distance = dx * dx + dy * dy;
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                bestSegment = i;
+                bestFraction = fraction;
+            }
+        }
+
+        mSegment = bestSegment;
+        mDistanceAlong = mCumulative[bestSegment]
+                + bestFraction * (mCumulative[bestSegment + 1] - mCumulative[bestSegment]);
+        mOffRouteDistance = Math.sqrt(bestDistance) * METRES_PER_DEGREE;
+    }
+}
@@ -0,0 +1,122 @@
+package com.bourke.travelbar;
+
+/**
+ * Decides how often, and how accurately, we need location fixes for the rest of the trip.
+ *
+ * Far from the destination the bar moves slowly, so fixes are spread out to roughly two per
+ * percentage step of the trip at the current speed, and taken at balanced power when a step is
+ * large enough not to need GPS. Within {@link Constants#APPROACH_DISTANCE} of the destination
+ * we go back to frequent, high accuracy fixes so arrival is picked up promptly, unless an
+ * arrival geofence is doing that job for us, see {@link #setGeofenced(boolean)}. While the
+ * screen is off nobody can see the bar, so outside the approach fixes drop to the longest
+ * interval at balanced power. If balanced power fixes turn out too coarse to use we stay on
+ * GPS, see {@link #setNeedsGps(boolean)}.
+ *
+ * Intervals are snapped to doublings of {@link Constants#UPDATE_INTERVAL}, and only move to
+ * another doubling once the wanted interval is well clear of the current one, so speed
+ * wobbling about a boundary doesn't keep replacing the location request. Plain Java, see
+ * {@link #update}.
+ */
+public class SamplingPolicy {
+
+    // Percentage steps at least this long (metres) don't need GPS to be seen
+    private static final double BALANCED_STEP_DISTANCE = 250;
+
+    // Below this speed (metres/second) we treat ourselves as stopped
+    private static final float MIN_SPEED = 0.5f;
+
+    // How far past a doubling, as a fraction of it, the wanted interval has to go to move to it
+    private static final double SNAP_MARGIN = 0.25;
+
+    private long mInterval = Constants.UPDATE_INTERVAL;
+    private boolean mHighAccuracy = true;
+
+    private boolean mGeofenced = false;
+    private boolean mScreenOn = true;
+    private boolean mNeedsGps = false;
+
+    /**
+     * Whether the OS is watching for arrival, so fixes are only needed to move the bar.
+     */
+    public void setGeofenced(boolean geofenced) {
+        mGeofenced = geofenced;
+    }
+
+    /**
+     * Whether anyone can see the bar, so fixes are only needed to tell when we've arrived.
+     */
+    public void setScreenOn(boolean screenOn) {
+        mScreenOn = screenOn;
+    }
+
+    /**
+     * Whether balanced power fixes have been too inaccurate to use, so only GPS will do.
+     */
+    public void setNeedsGps(boolean needsGps) {
+        mNeedsGps = needsGps;
+    }
+
+    /**
+     * Works out the sampling wanted for the current state of the trip.
+     *
+     * @param speed current speed in metres/second, or NaN if unknown
+     * @return true if {@link #getInterval()} or {@link #isHighAccuracy()} changed
+     */
+    public boolean update(double distanceRemaining, double totalDistance, float speed) {
+        long interval;
+        boolean highAccuracy;
+
+        boolean approaching = !mGeofenced && distanceRemaining <= Constants.APPROACH_DISTANCE;
+
+        if (!approaching && !mScreenOn) {
+            // Only arrival matters until the screen comes back on
+            interval = Constants.MAX_UPDATE_INTERVAL;
+            highAccuracy = false;
+        } else if (approaching || Float.isNaN(speed) || speed < MIN_SPEED) {
+            // Close in, or we can't tell how long the next step will take
+            interval = Constants.UPDATE_INTERVAL;
+            highAccuracy = approaching;
+        } else {
+            double step = totalDistance / 100;
+            double toApproach = mGeofenced
+                    ? step : distanceRemaining - Constants.APPROACH_DISTANCE;
+
+            // Two fixes per step, and don't sleep through the start of the approach
+            double seconds = Math.min(step, toApproach) / speed / 2;
+            interval = snap((long) (seconds * 1000), mInterval);
+            highAccuracy = totalDistance / 100 < BALANCED_STEP_DISTANCE;
+        }
+        highAccuracy |= mNeedsGps;
+
+        boolean changed = interval != mInterval || highAccuracy != mHighAccuracy;
+        mInterval = interval;
+        mHighAccuracy = highAccuracy;
+        return changed;
+    }
+
+    /** Milliseconds between fixes */
+    public long getInterval() {
+        return mInterval;
+    }
+
+    /** True if fixes should come from GPS, false if network accuracy will do */
+    public boolean isHighAccuracy() {
+        return mHighAccuracy;
+    }
+
+    /**
+     * The doubling of {@link Constants#UPDATE_INTERVAL} for an interval, or the current one if
+     * the interval is within {@link #SNAP_MARGIN} of it.
+     */
+    private static long snap(long interval, long current) {
+        if (interval >= current * (1 - SNAP_MARGIN) && interval < current * 2 * (1 + SNAP_MARGIN)) {
+            return current;
+        }
+
+        long snapped = Constants.UPDATE_INTERVAL;
+        while (snapped * 2 <= interval && snapped * 2 <= Constants.MAX_UPDATE_INTERVAL) {
+            snapped *= 2;
+        }
+        return snapped;
+    }
+}
@@ -0,0 +1,114 @@
+package com.bourke.travelbar;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Collapses concurrent calls for the same key into one.
+ *
+ * The first caller for a key runs the call on its own thread, anyone asking for the same key
+ * while it is running waits for and shares its result or failure. Once the call completes the
+ * key is forgotten, so later callers start a fresh one.
+ *
+ * A call that was cancelled or interrupted by its caller is never shared. Anyone waiting on it
+ * starts a new call instead, unless they have been cancelled or interrupted too. Timeouts are
+ * real failures and are shared like any other.
+ */
+public class SingleFlight<K, V> {
+
+    // How often a waiting caller checks its own cancellation signal, in milliseconds
+    private static final long CANCEL_POLL_INTERVAL = 50;
+
+    private final ConcurrentHashMap<K, FutureTask<V>> mInFlight =
+            new ConcurrentHashMap<K, FutureTask<V>>();
+
+    /**
+     * @param signal cancels waiting for someone else's call, may be null. The callable is
+     *               expected to observe the same signal when it runs.
+     */
+    public V execute(K key, Callable<V> callable, QueryCancellation signal) throws IOException {
+        while (true) {
+            FutureTask<V> task = new FutureTask<V>(callable);
+            FutureTask<V> existing = mInFlight.putIfAbsent(key, task);
+
+            if (existing == null) {
+                try {
+                    task.run();
+                } finally {
+                    mInFlight.remove(key, task);
+                }
+                return get(key, task);
+            }
+
+            try {
+                return await(key, existing, signal);
+            } catch (QueryCanceledException e) {
+                if (signal != null && signal.isCanceled()) {
+                    throw e;
+                }
+                // Whoever made the call gave up on it, make our own
+            } catch (InterruptedIOException e) {
+                if (e instanceof SocketTimeoutException || Thread.currentThread().isInterrupted()) {
+                    throw e;
+                }
+                // Whoever made the call was interrupted, make our own
+            }
+        }
+    }
+
+    private V await(K key, FutureTask<V> task, QueryCancellation signal) throws IOException {
+        if (signal == null) {
+            return get(key, task);
+        }
+
+        while (true) {
+            signal.throwIfCanceled();
+            try {
+                return unwrap(key, task, CANCEL_POLL_INTERVAL);
+            } catch (TimeoutException e) {
+                // Still running
+            }
+        }
+    }
+
+    private V get(K key, FutureTask<V> task) throws IOException {
+        try {
+            return unwrap(key, task, -1);
+        } catch (TimeoutException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /** Waits for the task, or for at most timeout milliseconds if that isn't negative */
+    private V unwrap(K key, FutureTask<V> task, long timeout)
+            throws IOException, TimeoutException {
+        try {
+            return timeout < 0 ? task.get() : task.get(timeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for " + key);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException("Call for " + key + " failed", cause);
+        }
+    }
+
+    /** Number of keys with a call currently running */
+    public int size() {
+        return mInFlight.size();
+    }
+}
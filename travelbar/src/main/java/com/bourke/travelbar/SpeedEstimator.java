@@ -0,0 +1,88 @@
+package com.bourke.travelbar;
+
+/**
+ * Keeps a running, exponentially weighted average of how fast we're closing on the
+ * destination, and from that how long is left.
+ *
+ * Only the last sample and the average are kept, and each update is a handful of arithmetic
+ * plus one {@link Math#exp}. Samples are weighted by the time since the last one, so uneven
+ * fix intervals don't skew the average. Plain Java, not thread safe.
+ */
+public class SpeedEstimator {
+
+    // Time constant of the average in milliseconds, older speeds fade by 1/e over this
+    public static final long DEFAULT_TIME_CONSTANT = 60000;
+
+    // Below this speed (metres/second) we can't say when we'll arrive
+    private static final double MIN_SPEED = 0.5;
+
+    private final double mTimeConstant;
+
+    private boolean mHasSample = false;
+    private double mLastDistance;
+    private long mLastTime;
+
+    private boolean mHasEstimate = false;
+    private double mSpeed = Double.NaN;
+
+    public SpeedEstimator() {
+        this(DEFAULT_TIME_CONSTANT);
+    }
+
+    public SpeedEstimator(long timeConstant) {
+        mTimeConstant = timeConstant;
+    }
+
+    /**
+     * @param distanceRemaining metres to the destination
+     * @param time of the fix in milliseconds
+     */
+    public void update(double distanceRemaining, long time) {
+        if (mHasSample && time > mLastTime) {
+            long elapsed = time - mLastTime;
+            double speed = (mLastDistance - distanceRemaining) * 1000 / elapsed;
+
+            if (!mHasEstimate) {
+                mSpeed = speed;
+                mHasEstimate = true;
+            } else {
+                double weight = 1 - Math.exp(-elapsed / mTimeConstant);
+                mSpeed += weight * (speed - mSpeed);
+            }
+        }
+
+        mLastDistance = distanceRemaining;
+        mLastTime = time;
+        mHasSample = true;
+    }
+
+    public void reset() {
+        mHasSample = false;
+        mHasEstimate = false;
+        mSpeed = Double.NaN;
+    }
+
+    /** False until there have been two samples */
+    public boolean hasEstimate() {
+        return mHasEstimate;
+    }
+
+    /**
+     * Average metres/second towards the destination, negative when moving away, or NaN until
+     * there have been two samples.
+     */
+    public double getSpeed() {
+        return mSpeed;
+    }
+
+    /**
+     * Milliseconds until we cover the given distance at the average speed, or -1 if we're not
+     * making enough headway to say.
+     */
+    public long getTimeRemaining(double distanceRemaining) {
+        if (!mHasEstimate || mSpeed < MIN_SPEED) {
+            return -1;
+        }
+        return (long) (distanceRemaining / mSpeed * 1000);
+    }
+}
@@ -0,0 +1,115 @@
+package com.bourke.travelbar;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URLDecoder;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Serves made up Places API responses without touching the network, for load testing
+ * {@link PlaceProvider} locally.
+ *
+ * Autocomplete requests get a fixed number of predictions derived from the input, and details
+ * requests get a location derived from the reference, so the same query always gives the same
+ * answer. An artificial latency can be set to stand in for a slow connection.
+ */
+public class StubPlacesTransport implements PlacesTransport {
+
+    private static final int PREDICTION_COUNT = 5;
+
+    private final long mLatency;
+
+    private final AtomicInteger mRequestCount = new AtomicInteger();
+
+    /**
+     * @param latency how long each request takes, in milliseconds
+     */
+    public StubPlacesTransport(long latency) {
+        mLatency = latency;
+    }
+
+    @Override
+    public <T> T get(String url, ResponseParser<T> parser, QueryCancellation signal,
+                     PlaceMetrics metrics) throws IOException {
+        mRequestCount.incrementAndGet();
+        long start = System.nanoTime();
+
+        if (mLatency > 0) {
+            try {
+                Thread.sleep(mLatency);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted during simulated latency");
+            }
+        }
+        if (signal != null) {
+            signal.throwIfCanceled();
+        }
+
+        String body;
+        if (url.contains("/autocomplete/")) {
+            body = autocompleteResponse(getParameter(url, "input"));
+        } else if (url.contains("/details/")) {
+            body = detailsResponse(getParameter(url, "reference"));
+        } else {
+            throw new IOException("No stub response for " + url);
+        }
+
+        // The simulated latency stands in for connecting, the body is there straight away
+        long connected = System.nanoTime();
+        T result = parser.parse(new ByteArrayInputStream(body.getBytes("UTF-8")));
+
+        if (metrics != null) {
+            metrics.record(PlaceMetrics.CONNECT, connected - start);
+            metrics.record(PlaceMetrics.DOWNLOAD, 0);
+            metrics.record(PlaceMetrics.PARSE, System.nanoTime() - connected);
+        }
+        return result;
+    }
+
+    /** Number of requests served so far */
+    public int getRequestCount() {
+        return mRequestCount.get();
+    }
+
+    private static String autocompleteResponse(String input) {
+        StringBuilder sb = new StringBuilder("{\"predictions\":[");
+        for (int i=0; i < PREDICTION_COUNT; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("{\"description\":\"").append(escape(input)).append(' ').append(i)
+                    .append(", Stub City\",\"reference\":\"stub-").append(i).append('-')
+                    .append(escape(input)).append("\"}");
+        }
+        return sb.append("],\"status\":\"OK\"}").toString();
+    }
+
+    private static String detailsResponse(String reference) {
+        // Spread places around a point so searches give distinct markers
+        int hash = reference.hashCode();
+        double lat = 53.35 + (hash % 1000) / 10000.0;
+        double lng = -6.26 + ((hash / 1000) % 1000) / 10000.0;
+
+        return String.format(Locale.US, "{\"result\":{\"formatted_address\":\"%s\","
+                + "\"geometry\":{\"location\":{\"lat\":%f,\"lng\":%f}}},\"status\":\"OK\"}",
+                escape(reference), lat, lng);
+    }
+
+    private static String getParameter(String url, String name) throws IOException {
+        int start = url.indexOf(name + "=");
+        if (start == -1) {
+            throw new IOException("No " + name + " parameter in " + url);
+        }
+        start += name.length() + 1;
+        int end = url.indexOf('&', start);
+        return URLDecoder.decode(end == -1 ? url.substring(start) : url.substring(start, end),
+                "UTF-8");
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+}
@@ -0,0 +1,13 @@
+package com.bourke.travelbar;
+
+import java.io.IOException;
+
+/**
+ * Thrown instead of making a Places API request when {@link PlacesQuota} doesn't allow one.
+ */
+public class ThrottledException extends IOException {
+
+    public ThrottledException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,149 @@
+package com.bourke.travelbar;
+
+import android.app.Notification;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.app.Service;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.SystemClock;
+import android.support.v4.app.NotificationCompat;
+import android.util.Log;
+
+/**
+ * Owns the ongoing and arrival notifications for {@link ProgressBarService}.
+ *
+ * The stop receiver, PendingIntents and running notification builder are set up once, and the
+ * running notification is only re-posted when the percentage or minutes to go shown actually
+ * change, at most every {@link Constants#NOTIFICATION_MIN_INTERVAL} milliseconds.
+ */
+public class TripNotifier {
+
+    private static final String TAG = "TravelBar/TripNotifier";
+
+    private static final String ACTION_STOP_SERVICE =
+            "com.bourke.ProgressBarService.STOP_SERVICE";
+
+    private final Service mService;
+    private final NotificationManager mNotificationManager;
+
+    private final BroadcastReceiver mStopReceiver;
+    private final PendingIntent mStopServiceIntent;
+    private final PendingIntent mMapsActivityIntent;
+
+    private final NotificationCompat.Builder mRunningBuilder;
+
+    private int mPostedProgress = -1;
+    private long mPostedMinutes = -1;
+    private long mPostedTime;
+
+    public TripNotifier(Service service) {
+        mService = service;
+        mNotificationManager =
+                (NotificationManager) service.getSystemService(Context.NOTIFICATION_SERVICE);
+
+        mStopReceiver = new BroadcastReceiver() {
+            @Override public void onReceive(Context context, Intent intent) {
+                mService.stopSelf();
+            }
+        };
+        service.registerReceiver(mStopReceiver, new IntentFilter(ACTION_STOP_SERVICE));
+
+        mStopServiceIntent = PendingIntent.getBroadcast(service, 0,
+                new Intent(ACTION_STOP_SERVICE), PendingIntent.FLAG_UPDATE_CURRENT);
+        mMapsActivityIntent = PendingIntent.getActivity(service, 0,
+                new Intent(service, MapsActivity.class), 0);
+
+        mRunningBuilder = new NotificationCompat.Builder(service)
+                .setSmallIcon(R.drawable.ic_notify)
+                .setAutoCancel(false)
+                .setOngoing(true)
+                .setOnlyAlertOnce(true)
+                .addAction(R.drawable.ic_action_stop_light,
+                        service.getString(R.string.stop_tracking), mStopServiceIntent)
+                .setContentIntent(mMapsActivityIntent);
+    }
+
+    /**
+     * Posts the running notification with the given title, regardless of what was last shown.
+     * The next {@link #showProgress(int, long)} call replaces it straight away.
+     */
+    public void showRunning(String titleText) {
+        mRunningBuilder.setContentTitle(titleText);
+        mRunningBuilder.setContentText(null);
+        mNotificationManager.notify(ProgressBarService.NOTIFICATION_ID, mRunningBuilder.build());
+
+        mPostedProgress = -1;
+        mPostedTime = 0;
+    }
+
+    /**
+     * Updates the running notification if what it shows has changed and it hasn't been posted
+     * too recently. A skipped update is picked up by the next call after the interval.
+     *
+     * @param timeRemaining milliseconds to the destination, or -1 if unknown
+     */
+    public void showProgress(int progress, long timeRemaining) {
+        // Round up, so we don't say 0 minutes until we're there
+        long minutes = timeRemaining < 0 ? -1 : (timeRemaining + 59999) / 60000;
+
+        if (progress == mPostedProgress && minutes == mPostedMinutes) {
+            return;
+        }
+
+        long now = SystemClock.elapsedRealtime();
+        if (now - mPostedTime < Constants.NOTIFICATION_MIN_INTERVAL) {
+            return;
+        }
+
+        mRunningBuilder.setContentTitle(progress + "% journey completed");
+        mRunningBuilder.setContentText(minutes < 0 ? null : formatMinutes(minutes));
+        mNotificationManager.notify(ProgressBarService.NOTIFICATION_ID, mRunningBuilder.build());
+
+        mPostedProgress = progress;
+        mPostedMinutes = minutes;
+        mPostedTime = now;
+
+        if (BuildConfig.DEBUG) {
+            Log.d(TAG, "Posted progress notification: " + progress + "%, " + minutes + " min");
+        }
+    }
+
+    public void showArrival() {
+        NotificationCompat.Builder builder =
+                new NotificationCompat.Builder(mService)
+                        .setSmallIcon(R.drawable.ic_notify)
+                        .setTicker("Yeehaw!")
+                        .setContentTitle("You are arriving at your destination!")
+                        .setAutoCancel(true)
+                        .setVibrate(new long[]{2000, 2000})
+                        .setDefaults(Notification.DEFAULT_ALL)
+                        .addAction(R.drawable.ic_action_stop_light,
+                                mService.getString(R.string.stop_tracking), mStopServiceIntent)
+                        .setContentIntent(mMapsActivityIntent);
+
+        mNotificationManager.notify(ProgressBarService.NOTIFICATION_ID, builder.build());
+    }
+
+    private static String formatMinutes(long minutes) {
+        if (minutes < 60) {
+            return "About " + minutes + " min to go";
+        }
+        return "About " + minutes / 60 + " h " + minutes % 60 + " min to go";
+    }
+
+    /**
+     * Unregisters the stop receiver and clears any notifications we've shown.
+     */
+    public void release() {
+        try {
+            mService.unregisterReceiver(mStopReceiver);
+        } catch (IllegalArgumentException e) {
+            // http://stackoverflow.com/a/3568906/663370
+        }
+
+        mNotificationManager.cancelAll();
+    }
+}
@@ -0,0 +1,211 @@
+package com.bourke.travelbar;
+
+/**
+ * Works out how far through a trip we are from a stream of location fixes.
+ *
+ * Plain Java with primitive inputs and outputs, and nothing is allocated per fix, so it can be
+ * driven from a unit test or benchmark as easily as from {@link ProgressBarService}. Not thread
+ * safe, feed it from one thread.
+ */
+public class TripProgressEngine {
+
+    // Progress at which we consider the destination reached on short trips
+    public static final int ARRIVAL_PROGRESS = 90;
+
+    // Percentage points progress has to fall by before the bar goes backwards
+    public static final int PROGRESS_HYSTERESIS = 2;
+
+    private double mStartLat;
+    private double mStartLon;
+    private double mDestinationLat;
+    private double mDestinationLon;
+
+    private RoutePolyline mRoute;
+
+    private boolean mHasDestination = false;
+    private double mTotalDistance;
+
+    private boolean mHasFix = false;
+    private long mFixTime;
+    private double mDistanceRemaining;
+    private final SpeedEstimator mSpeedEstimator = new SpeedEstimator();
+    private int mProgress = ProgressMath.MIN_PROGRESS;
+    private float mExactProgress = ProgressMath.MIN_PROGRESS;
+
+    public void setStart(double lat, double lon) {
+        mStartLat = lat;
+        mStartLon = lon;
+        updateTotalDistance();
+    }
+
+    public void setDestination(double lat, double lon) {
+        mDestinationLat = lat;
+        mDestinationLon = lon;
+        mHasDestination = true;
+
+        // Any route was to the old destination
+        mRoute = null;
+        updateTotalDistance();
+        resetFix();
+    }
+
+    /**
+     * Measures progress along a route rather than as the crow flies, or null to go back to
+     * straight lines. Should be set after the destination, which it ought to end at.
+     */
+    public void setRoute(RoutePolyline route) {
+        mRoute = route;
+        updateTotalDistance();
+        resetFix();
+    }
+
+    public RoutePolyline getRoute() {
+        return mRoute;
+    }
+
+    /**
+     * Takes a new fix and updates the progress and distance remaining. Progress only
+     * goes backwards by {@link #PROGRESS_HYSTERESIS} points or more, so a fix wobbling on the
+     * edge of a percentage doesn't flick the bar back and forth.
+     *
+     * @param time of the fix in milliseconds
+     * @return true if the progress changed
+     */
+    public boolean update(double lat, double lon, long time) {
+        double distanceRemaining;
+        if (mRoute != null) {
+            mRoute.project(lat, lon);
+            distanceRemaining = mRoute.getDistanceRemaining();
+        } else {
+            distanceRemaining = GeoMath.distanceBetween(lat, lon, mDestinationLat,
+                    mDestinationLon);
+        }
+
+        mSpeedEstimator.update(distanceRemaining, time);
+        mDistanceRemaining = distanceRemaining;
+        mExactProgress = ProgressMath.exactProgress(mDistanceRemaining, mTotalDistance);
+
+        int progress = ProgressMath.progress(mDistanceRemaining, mTotalDistance);
+        boolean changed = !mHasFix || progress > mProgress
+                || progress <= mProgress - PROGRESS_HYSTERESIS;
+
+        mFixTime = time;
+        mHasFix = true;
+
+        if (!changed) {
+            return false;
+        }
+        mProgress = progress;
+        return true;
+    }
+
+    public boolean hasFix() {
+        return mHasFix;
+    }
+
+    /** Time of the last fix in milliseconds */
+    public long getFixTime() {
+        return mFixTime;
+    }
+
+    /** Percentage of the trip completed, never less than {@link ProgressMath#MIN_PROGRESS} */
+    public int getProgress() {
+        return mProgress;
+    }
+
+    /** Unrounded progress as of the last fix, without the hysteresis */
+    public float getExactProgress() {
+        return mExactProgress;
+    }
+
+    /**
+     * Percentage points per second we've been making on average, or 0 if we're not closing on
+     * the destination.
+     */
+    public float getProgressRate() {
+        double speed = mSpeedEstimator.getSpeed();
+        if (!mSpeedEstimator.hasEstimate() || speed <= 0 || mTotalDistance <= 0) {
+            return 0;
+        }
+        return (float) (speed / mTotalDistance * 100);
+    }
+
+    /** Metres left to the destination as of the last fix, along the route if there is one */
+    public double getDistanceRemaining() {
+        return mDistanceRemaining;
+    }
+
+    /**
+     * Average metres/second we've been closing on the destination, negative when moving away,
+     * or NaN until there have been two fixes.
+     */
+    public double getClosingSpeed() {
+        return mSpeedEstimator.getSpeed();
+    }
+
+    /**
+     * Milliseconds left until we arrive at the average closing speed, or -1 if we can't say.
+     */
+    public long getTimeRemaining() {
+        if (!mHasFix) {
+            return -1;
+        }
+        return mSpeedEstimator.getTimeRemaining(mDistanceRemaining);
+    }
+
+    /** Metres from the start to the destination, or the length of the route */
+    public double getTotalDistance() {
+        return mTotalDistance;
+    }
+
+    public boolean hasDestination() {
+        return mHasDestination;
+    }
+
+    public double getDestinationLat() {
+        return mDestinationLat;
+    }
+
+    public double getDestinationLon() {
+        return mDestinationLon;
+    }
+
+    /**
+     * Metres from the destination at which we've arrived. {@link Constants#ARRIVAL_RADIUS},
+     * or the last (100 - {@link #ARRIVAL_PROGRESS})% of the trip if that's shorter, but never
+     * less than {@link Constants#MIN_ARRIVAL_RADIUS}.
+     */
+    public float getArrivalRadius() {
+        double radius = Math.min(Constants.ARRIVAL_RADIUS,
+                mTotalDistance * (100 - ARRIVAL_PROGRESS) / 100);
+        return (float) Math.max(Constants.MIN_ARRIVAL_RADIUS, radius);
+    }
+
+    public boolean isArrived() {
+        return mHasFix && mDistanceRemaining <= getArrivalRadius();
+    }
+
+    private void updateTotalDistance() {
+        if (mRoute != null) {
+            mTotalDistance = mRoute.getLength();
+        } else {
+            mTotalDistance = GeoMath.distanceBetween(mStartLat, mStartLon, mDestinationLat,
+                    mDestinationLon);
+        }
+    }
+
+    private void resetFix() {
+        // Distances from here on aren't comparable with the last fix
+        mSpeedEstimator.reset();
+        mHasFix = false;
+    }
+
+    @Override public String toString() {
+        return new StringBuilder("(") //
+                .append(mStartLat).append(", ").append(mStartLon) //
+                .append(") -> (") //
+                .append(mDestinationLat).append(", ").append(mDestinationLon) //
+                .append(")") //
+                .toString();
+    }
+}
@@ -0,0 +1,159 @@
+package com.bourke.travelbar;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Keeps a binary log of a trip for working out what the bar did and why. Every fix as it came
+ * in, and the progress worked out from each fix that was kept, are appended as fixed width
+ * little-endian records of {@link #RECORD_SIZE} bytes:
+ *
+ * <pre>
+ *   header:   type 0, 3 pad, int version, long wall time, 24 pad
+ *   fix:      type 1, 3 pad, float accuracy, long time, double lat, double lon,
+ *             float speed (NaN if unknown), 4 pad
+ *   progress: type 2, 3 pad, int progress, long time, double exact progress,
+ *             double distance remaining, float closing speed, 4 pad
+ * </pre>
+ *
+ * Records collect in a direct buffer and are written out a buffer at a time, so recording a fix
+ * doesn't allocate or usually touch the disk. When the log passes {@link #MAX_LOG_SIZE} it's
+ * moved aside to {@link #OLD_LOG_NAME}, replacing the one before, so at most two logs are kept.
+ *
+ * The file is opened with the first record. Not thread safe.
+ */
+public class TripRecorder {
+
+    public static final String LOG_NAME = "trip.log";
+    public static final String OLD_LOG_NAME = "trip.log.1";
+
+    public static final int VERSION = 1;
+    public static final int RECORD_SIZE = 40;
+
+    public static final byte TYPE_HEADER = 0;
+    public static final byte TYPE_FIX = 1;
+    public static final byte TYPE_PROGRESS = 2;
+
+    // Size in bytes at which the log is rotated
+    public static final long MAX_LOG_SIZE = 1024 * 1024;
+
+    // Records held before being written out
+    private static final int BUFFER_RECORDS = 128;
+
+    private final File mLog;
+    private final File mOldLog;
+
+    private final ByteBuffer mBuffer = ByteBuffer.allocateDirect(BUFFER_RECORDS * RECORD_SIZE)
+            .order(ByteOrder.LITTLE_ENDIAN);
+
+    private FileChannel mChannel;
+
+    public TripRecorder(File dir) {
+        mLog = new File(dir, LOG_NAME);
+        mOldLog = new File(dir, OLD_LOG_NAME);
+    }
+
+    /**
+     * @param speed metres/second, or NaN if unknown
+     */
+    public void recordFix(long time, double lat, double lon, float accuracy, float speed)
+            throws IOException {
+        ensureSpace();
+        mBuffer.put(TYPE_FIX).put((byte) 0).put((byte) 0).put((byte) 0)
+                .putFloat(accuracy)
+                .putLong(time)
+                .putDouble(lat)
+                .putDouble(lon)
+                .putFloat(speed)
+                .putInt(0);
+    }
+
+    /**
+     * @param closingSpeed metres/second
+     */
+    public void recordProgress(long time, int progress, double exactProgress,
+            double distanceRemaining, float closingSpeed) throws IOException {
+        ensureSpace();
+        mBuffer.put(TYPE_PROGRESS).put((byte) 0).put((byte) 0).put((byte) 0)
+                .putInt(progress)
+                .putLong(time)
+                .putDouble(exactProgress)
+                .putDouble(distanceRemaining)
+                .putFloat(closingSpeed)
+                .putInt(0);
+    }
+
+    /**
+     * Writes out anything held in the buffer.
+     */
+    public void flush() throws IOException {
+        if (mChannel == null || mBuffer.position() == 0) {
+            return;
+        }
+
+        mBuffer.flip();
+        while (mBuffer.hasRemaining()) {
+            mChannel.write(mBuffer);
+        }
+        mBuffer.clear();
+    }
+
+    /**
+     * Writes out anything held and closes the log. Recording again opens it again.
+     */
+    public void close() throws IOException {
+        if (mChannel == null) {
+            return;
+        }
+
+        try {
+            flush();
+        } finally {
+            mChannel.close();
+            mChannel = null;
+            mBuffer.clear();
+        }
+    }
+
+    /**
+     * Makes sure there's an open log and room in the buffer for another record.
+     */
+    private void ensureSpace() throws IOException {
+        if (mChannel == null) {
+            open();
+        }
+        if (mBuffer.remaining() < RECORD_SIZE) {
+            flush();
+            if (mChannel.size() >= MAX_LOG_SIZE) {
+                rotate();
+            }
+        }
+    }
+
+    private void open() throws IOException {
+        mChannel = new FileOutputStream(mLog, true).getChannel();
+
+        mBuffer.put(TYPE_HEADER).put((byte) 0).put((byte) 0).put((byte) 0)
+                .putInt(VERSION)
+                .putLong(System.currentTimeMillis())
+                .putLong(0).putLong(0).putLong(0);
+    }
+
+    private void rotate() throws IOException {
+        mChannel.close();
+        mChannel = null;
+
+        if (mOldLog.exists() && !mOldLog.delete()) {
+            throw new IOException("Couldn't delete " + mOldLog);
+        }
+        if (!mLog.renameTo(mOldLog)) {
+            throw new IOException("Couldn't move " + mLog + " to " + mOldLog);
+        }
+
+        open();
+    }
+}